@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.benchmarks;
+
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.FILE_CONTENT_PROPERTY;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.coldstorage.action.CheckColdStorageAvailabilityAction.CheckColdStorageAvailabilityComputation;
+import org.nuxeo.coldstorage.action.MoveToColdStorageContentAction.MoveToColdStorageContentComputation;
+import org.nuxeo.coldstorage.service.ColdStorageService;
+import org.nuxeo.ecm.core.DummyBlobProvider;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.repository.RepositoryManager;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobStatus;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of a full batch of the move and check availability bulk computations, reported per document.
+ *
+ * @since 2021.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(0)
+public class BulkComputationBenchmark {
+
+    /** The default batch size of the cold storage bulk actions. */
+    protected static final int BATCH_SIZE = 20;
+
+    protected static String getRepositoryName() {
+        return Framework.getService(RepositoryManager.class).getDefaultRepositoryName();
+    }
+
+    protected static List<DocumentModel> createDocuments(CoreSession session) {
+        List<DocumentModel> docs = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "benchmark", "File");
+            Blob blob = Blobs.createBlob(UUID.randomUUID().toString());
+            blob.setDigest(UUID.randomUUID().toString());
+            doc.setPropertyValue(FILE_CONTENT_PROPERTY, (Serializable) blob);
+            docs.add(session.createDocument(doc));
+        }
+        return docs;
+    }
+
+    @State(Scope.Thread)
+    public static class MoveState {
+
+        protected String repository;
+
+        protected BenchmarkMoveComputation computation;
+
+        protected List<String> ids;
+
+        @Setup(Level.Trial)
+        public void setupTrial() {
+            repository = getRepositoryName();
+            computation = new BenchmarkMoveComputation();
+        }
+
+        @Setup(Level.Invocation)
+        public void setupInvocation() {
+            // a new batch of documents to move for each invocation
+            ids = TransactionHelper.runInTransaction(() -> {
+                List<String> docIds = new ArrayList<>();
+                createDocuments(CoreInstance.getCoreSessionSystem(repository)).forEach(doc -> docIds.add(doc.getId()));
+                return docIds;
+            });
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CheckState {
+
+        protected String repository;
+
+        protected BenchmarkCheckComputation computation;
+
+        protected List<String> ids;
+
+        @Setup(Level.Trial)
+        public void setupTrial() {
+            repository = getRepositoryName();
+            computation = new BenchmarkCheckComputation();
+            // documents being retrieved stay so, the dummy blob provider reports their restore as ongoing
+            ids = TransactionHelper.runInTransaction(() -> {
+                CoreSession session = CoreInstance.getCoreSessionSystem(repository);
+                ColdStorageService service = Framework.getService(ColdStorageService.class);
+                BlobManager blobManager = Framework.getService(BlobManager.class);
+                List<String> docIds = new ArrayList<>();
+                for (DocumentModel doc : createDocuments(session)) {
+                    service.moveToColdStorage(session, doc.getRef());
+                    doc = service.retrieveFromColdStorage(session, doc.getRef(), Duration.ofDays(1));
+                    ManagedBlob coldContent = (ManagedBlob) doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+                    DummyBlobProvider blobProvider = (DummyBlobProvider) blobManager.getBlobProvider(
+                            coldContent.getProviderId());
+                    blobProvider.addStatus(coldContent,
+                            new BlobStatus().withStorageClass("GLACIER").withOngoingRestore(true));
+                    docIds.add(doc.getId());
+                }
+                return docIds;
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownTrial() {
+            computation.destroy();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void moveToColdStorage(MoveState state) {
+        TransactionHelper.runInTransaction(
+                () -> state.computation.compute(CoreInstance.getCoreSessionSystem(state.repository), state.ids));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void checkColdStorageAvailability(CheckState state) {
+        TransactionHelper.runInTransaction(
+                () -> state.computation.compute(CoreInstance.getCoreSessionSystem(state.repository), state.ids));
+    }
+
+    protected static class BenchmarkMoveComputation extends MoveToColdStorageContentComputation {
+
+        protected void compute(CoreSession session, List<String> ids) {
+            delta = BulkStatus.deltaOf("benchmark");
+            compute(session, ids, Map.of());
+        }
+    }
+
+    protected static class BenchmarkCheckComputation extends CheckColdStorageAvailabilityComputation {
+
+        protected void compute(CoreSession session, List<String> ids) {
+            delta = BulkStatus.deltaOf("benchmark");
+            compute(session, ids, Map.of());
+        }
+    }
+
+}
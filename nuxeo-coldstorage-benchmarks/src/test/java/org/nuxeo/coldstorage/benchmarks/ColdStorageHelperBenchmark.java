@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.benchmarks;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.coldstorage.ColdStorageHelper;
+import org.nuxeo.coldstorage.service.ColdStorageServiceImpl;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobStatus;
+import org.nuxeo.ecm.core.blob.SimpleManagedBlob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the blob key and status predicates evaluated for each document of the bulk actions.
+ *
+ * @since 2021.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(0)
+public class ColdStorageHelperBenchmark {
+
+    protected SimpleManagedBlob blob;
+
+    protected BlobStatus[] statuses;
+
+    @Setup
+    public void setup() {
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = "dummy:0123456789abcdef0123456789abcdef";
+        blobInfo.digest = "0123456789abcdef0123456789abcdef";
+        blob = new SimpleManagedBlob(blobInfo);
+        statuses = new BlobStatus[] { new BlobStatus(), //
+                new BlobStatus().withStorageClass("GLACIER"), //
+                new BlobStatus().withStorageClass("GLACIER").withOngoingRestore(true), //
+                new BlobStatus().withStorageClass("GLACIER")
+                                .withDownloadable(true)
+                                .withDownloadableUntil(Instant.now().plusSeconds(3600)) };
+    }
+
+    @Benchmark
+    public String getContentBlobKey() {
+        return ColdStorageServiceImpl.getContentBlobKey(blob);
+    }
+
+    @Benchmark
+    public void statusPredicates(Blackhole blackhole) {
+        for (BlobStatus status : statuses) {
+            blackhole.consume(ColdStorageHelper.isDownloadable(status));
+            blackhole.consume(ColdStorageHelper.isInColdStorage(status));
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.coldstorage.service.ColdStorageService;
+import org.nuxeo.coldstorage.service.ColdStorageServiceImpl;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.repository.RepositoryManager;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of the resolution of the rendition replacing the main content of the moved documents.
+ *
+ * @since 2021.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(0)
+public class RenditionNameBenchmark {
+
+    protected static final String[] DOC_TYPES = { "File", "Picture", "Video", "Note" };
+
+    protected ColdStorageServiceImpl service;
+
+    protected List<DocumentModel> documents;
+
+    @Setup
+    public void setup() {
+        service = (ColdStorageServiceImpl) Framework.getService(ColdStorageService.class);
+        documents = new ArrayList<>();
+        TransactionHelper.runInTransaction(() -> {
+            String repository = Framework.getService(RepositoryManager.class).getDefaultRepositoryName();
+            CoreSession session = CoreInstance.getCoreSessionSystem(repository);
+            for (String docType : DOC_TYPES) {
+                // documents aren't saved, resolution only relies on their type, facets and main content
+                documents.add(session.createDocumentModel("/", docType, docType));
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void getRenditionName(Blackhole blackhole) {
+        for (DocumentModel doc : documents) {
+            blackhole.consume(service.getRenditionName(doc));
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.benchmarks;
+
+import static org.junit.Assert.assertFalse;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME;
+
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.coldstorage.DummyColdStorageFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks within the Nuxeo runtime started by the test runner, with an in-memory repository and the
+ * dummy blob provider.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark}, optionally restricted with {@code -Dbenchmark.include=<regexp>}. Results,
+ * including the allocation rate from the GC profiler, are written in JSON to {@code target/jmh-result.json}.
+ *
+ * @since 2021.4
+ */
+@RunWith(FeaturesRunner.class)
+@Features(DummyColdStorageFeature.class)
+@Deploy("org.nuxeo.coldstorage.test:OSGI-INF/test-coldstorage-bulk-contrib.xml")
+// measure the blob provider calls, not the cache
+@WithFrameworkProperty(name = COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME, value = "0")
+@WithFrameworkProperty(name = COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME, value = "0")
+// every document being retrieved is probed
+@WithFrameworkProperty(name = COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME, value = "0")
+@WithFrameworkProperty(name = COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME, value = "0")
+public class TestColdStorageBenchmarks {
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        Options options = new OptionsBuilder().include(System.getProperty("benchmark.include", ".*"))
+                                              // run in this JVM, where the Nuxeo runtime is started
+                                              .forks(0)
+                                              .addProfiler(GCProfiler.class)
+                                              .resultFormat(ResultFormatType.JSON)
+                                              .result(System.getProperty("benchmark.result",
+                                                      "target/jmh-result.json"))
+                                              .build();
+        Collection<RunResult> results = new Runner(options).run();
+        assertFalse("No benchmark was run", results.isEmpty());
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * Persistent due times of the availability checks of the documents being retrieved from cold storage.
+ * <p>
+ * A retrieval is not checked before its expected completion delay. Then each check that finds the content still being
+ * retrieved postpones the next one with an exponential backoff, bounded by a maximum delay. A document without due
+ * time, e.g. retrieved before the schedule existed, is always due.
+ * <p>
+ * The configured delays are the ones of the {@link RetrievalTier#STANDARD standard} tier, they are scaled by the
+ * {@link RetrievalTier#getLatencyFactor() latency factor} of the tier of the retrieval.
+ *
+ * @since 2021.4
+ */
+public class AvailabilityCheckSchedule {
+
+    protected static final String DUE_TIME_PREFIX = "retrieve.dueTime:";
+
+    protected static final String ATTEMPTS_PREFIX = "retrieve.attempts:";
+
+    protected final KeyValueStore store;
+
+    protected final long expectedDelayMillis;
+
+    protected final long backoffMillis;
+
+    protected final long maxBackoffMillis;
+
+    protected final long ttlSeconds;
+
+    protected final LongSupplier clock;
+
+    public AvailabilityCheckSchedule(KeyValueStore store, Duration expectedDelay, Duration backoff,
+            Duration maxBackoff) {
+        this(store, expectedDelay, backoff, maxBackoff, System::currentTimeMillis);
+    }
+
+    public AvailabilityCheckSchedule(KeyValueStore store, Duration expectedDelay, Duration backoff,
+            Duration maxBackoff, LongSupplier clock) {
+        this.store = store;
+        this.expectedDelayMillis = expectedDelay.toMillis();
+        this.backoffMillis = backoff.toMillis();
+        this.maxBackoffMillis = Math.max(backoffMillis, maxBackoff.toMillis());
+        // entries of documents no longer checked, e.g. deleted, must not stay forever
+        long slowestDelayMillis = scale(expectedDelayMillis + maxBackoffMillis, RetrievalTier.BULK);
+        this.ttlSeconds = Duration.ofMillis(slowestDelayMillis).multipliedBy(2).toSeconds()
+                + Duration.ofDays(1).toSeconds();
+        this.clock = clock;
+    }
+
+    /**
+     * Schedules the first check of a retrieval requested now with the standard tier.
+     */
+    public void scheduleFirstCheck(String docId) {
+        scheduleFirstCheck(docId, RetrievalTier.STANDARD);
+    }
+
+    /**
+     * Schedules the first check of a retrieval requested now with the given tier.
+     *
+     * @since 2021.4
+     */
+    public void scheduleFirstCheck(String docId, RetrievalTier tier) {
+        store.put(ATTEMPTS_PREFIX + docId, (String) null);
+        setDueTime(docId, clock.getAsLong() + scale(expectedDelayMillis, tier));
+    }
+
+    /**
+     * Postpones the next check of a retrieval with the standard tier which is still ongoing.
+     */
+    public void scheduleNextCheck(String docId) {
+        scheduleNextCheck(docId, RetrievalTier.STANDARD);
+    }
+
+    /**
+     * Postpones the next check of a retrieval with the given tier which is still ongoing.
+     *
+     * @since 2021.4
+     */
+    public void scheduleNextCheck(String docId, RetrievalTier tier) {
+        long attempts = store.addAndGet(ATTEMPTS_PREFIX + docId, 1);
+        store.setTTL(ATTEMPTS_PREFIX + docId, ttlSeconds);
+        setDueTime(docId, clock.getAsLong() + scale(getBackoff(attempts), tier));
+    }
+
+    /**
+     * Returns whether the retrieval of the given document has to be checked now.
+     */
+    public boolean isDue(String docId) {
+        String dueTime = store.getString(DUE_TIME_PREFIX + docId);
+        return dueTime == null || Long.parseLong(dueTime) <= clock.getAsLong();
+    }
+
+    /**
+     * Forgets the retrieval of the given document, once it is over.
+     */
+    public void remove(String docId) {
+        store.put(DUE_TIME_PREFIX + docId, (String) null);
+        store.put(ATTEMPTS_PREFIX + docId, (String) null);
+    }
+
+    protected long getBackoff(long attempts) {
+        if (backoffMillis <= 0) {
+            return 0;
+        }
+        // cap the shift to avoid overflowing, the max backoff is reached long before anyway
+        long backoff = backoffMillis << Math.min(attempts - 1, 30);
+        return backoff <= 0 ? maxBackoffMillis : Math.min(backoff, maxBackoffMillis);
+    }
+
+    protected static long scale(long delayMillis, RetrievalTier tier) {
+        return (long) (delayMillis * tier.getLatencyFactor());
+    }
+
+    protected void setDueTime(String docId, long dueTime) {
+        store.put(DUE_TIME_PREFIX + docId, String.valueOf(dueTime), ttlSeconds);
+    }
+
+}
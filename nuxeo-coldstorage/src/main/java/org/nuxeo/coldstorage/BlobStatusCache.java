@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+import org.nuxeo.ecm.core.blob.BlobStatus;
+import org.nuxeo.runtime.pubsub.PubSubService;
+
+/**
+ * Bounded per-node cache of {@link BlobStatus} keyed by blob key.
+ * <p>
+ * Statuses of blobs being restored are expected to change soon and are kept for a short time, whereas stable statuses
+ * (standard, in cold storage, or restored until a given date) are kept longer. Entries are evicted in least recently
+ * used order once the maximum size is reached.
+ * <p>
+ * The blob keys invalidated on a node, on each update of their blob including a restore request, are published to the
+ * other ones so that they don't keep a stale status. The callers to which a stale status would be harmful, e.g. when
+ * requesting a retrieval or resolving one, bypass the cache.
+ *
+ * @since 2021.4
+ */
+public class BlobStatusCache {
+
+    public static final String TOPIC = "coldstorageBlobStatus";
+
+    protected final int maxSize;
+
+    protected final long ttlMillis;
+
+    protected final long ongoingRestoreTtlMillis;
+
+    protected final LongSupplier clock;
+
+    protected final Map<String, Entry> entries;
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    protected final AtomicLong misses = new AtomicLong();
+
+    protected final BiConsumer<String, byte[]> subscriber = this::onInvalidated;
+
+    protected PubSubService pubSubService;
+
+    public BlobStatusCache(int maxSize, Duration ttl, Duration ongoingRestoreTtl) {
+        this(maxSize, ttl, ongoingRestoreTtl, System::currentTimeMillis);
+    }
+
+    public BlobStatusCache(int maxSize, Duration ttl, Duration ongoingRestoreTtl, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.ongoingRestoreTtlMillis = ongoingRestoreTtl.toMillis();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > BlobStatusCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Subscribes to the blob keys invalidated by the other nodes.
+     *
+     * @param pubSubService the service to publish and receive the invalidated blob keys, {@code null} on a single node
+     */
+    public void start(PubSubService pubSubService) {
+        this.pubSubService = pubSubService;
+        if (pubSubService != null) {
+            pubSubService.registerSubscriber(TOPIC, subscriber);
+        }
+    }
+
+    /**
+     * Unsubscribes from the blob keys invalidated by the other nodes.
+     */
+    public void stop() {
+        if (pubSubService != null) {
+            pubSubService.unregisterSubscriber(TOPIC, subscriber);
+            pubSubService = null;
+        }
+    }
+
+    /**
+     * Returns the cached status of the given blob key, or {@code null} if absent or expired.
+     */
+    public BlobStatus get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits.incrementAndGet();
+                return entry.status;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, BlobStatus status) {
+        if (status == null) {
+            return;
+        }
+        long ttl = getTtl(status);
+        if (ttl <= 0) {
+            return;
+        }
+        long expiresAt = clock.getAsLong() + ttl;
+        synchronized (entries) {
+            entries.put(key, new Entry(status, expiresAt));
+        }
+    }
+
+    /**
+     * Invalidates the status of the given blob key on this node and on the other ones.
+     */
+    public void invalidate(String key) {
+        invalidateLocally(key);
+        if (pubSubService != null && isEnabled()) {
+            pubSubService.publish(TOPIC, key.getBytes(UTF_8));
+        }
+    }
+
+    protected void invalidateLocally(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    protected void onInvalidated(String topic, byte[] message) {
+        invalidateLocally(new String(message, UTF_8));
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && (ttlMillis > 0 || ongoingRestoreTtlMillis > 0);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    protected long getTtl(BlobStatus status) {
+        if (maxSize <= 0) {
+            return 0;
+        }
+        if (status.isOngoingRestore()) {
+            return ongoingRestoreTtlMillis;
+        }
+        Instant downloadableUntil = status.getDownloadableUntil();
+        if (downloadableUntil != null) {
+            // a retrieved blob goes back to cold storage at a known date, don't keep it beyond
+            return Math.min(ttlMillis, downloadableUntil.toEpochMilli() - clock.getAsLong());
+        }
+        return ttlMillis;
+    }
+
+    protected static class Entry {
+
+        protected final BlobStatus status;
+
+        protected final long expiresAt;
+
+        protected Entry(BlobStatus status, long expiresAt) {
+            this.status = status;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import java.time.Duration;
+
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * Cluster-wide lease on a task, held by a single node at a time through a key/value store entry expiring with the
+ * lease.
+ * <p>
+ * The lease is meant to be acquired at each run of a task scheduled on all the nodes, so that only one of them runs
+ * it. It is not released once the task is done: it expires after its duration, preventing the nodes running the same
+ * schedule a bit later from running the task again. If the holder dies, another node acquires the lease once expired.
+ *
+ * @since 2021.4
+ */
+public class ClusterLease {
+
+    protected static final String PREFIX = "lease:";
+
+    protected final KeyValueStore store;
+
+    protected final String key;
+
+    protected final String nodeId;
+
+    protected final Duration duration;
+
+    public ClusterLease(KeyValueStore store, String name, String nodeId, Duration duration) {
+        this.store = store;
+        this.key = PREFIX + name;
+        this.nodeId = nodeId;
+        this.duration = duration;
+    }
+
+    /**
+     * Acquires the lease for the current node, or renews it if already held by the current node.
+     *
+     * @return {@code true} if the lease is held by the current node, {@code false} if it is held by another one
+     */
+    public boolean acquire() {
+        long ttl = Math.max(1, duration.getSeconds());
+        return store.compareAndSet(key, null, nodeId, ttl) || store.compareAndSet(key, nodeId, nodeId, ttl);
+    }
+
+    /**
+     * Releases the lease if held by the current node.
+     */
+    public void release() {
+        store.compareAndSet(key, nodeId, null);
+    }
+
+    /**
+     * Returns the node holding the lease, or {@code null} if it is not held.
+     */
+    public String getHolder() {
+        return store.getString(key);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+}
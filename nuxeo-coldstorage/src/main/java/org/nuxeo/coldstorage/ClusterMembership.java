@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.KeyValueStoreProvider;
+
+/**
+ * Cluster-wide membership of the nodes taking part in a task split into shards, held by a key/value store.
+ * <p>
+ * Each node records a heartbeat expiring after a given duration, which has to be longer than the interval between two
+ * heartbeats. The shards are distributed in a round-robin fashion over the live nodes, sorted by identifier, so that
+ * they are rebalanced as soon as a node joins, leaves, or misses its heartbeat.
+ *
+ * @since 2021.4
+ */
+public class ClusterMembership {
+
+    protected static final String PREFIX = "node:";
+
+    protected final KeyValueStoreProvider store;
+
+    protected final String nodeId;
+
+    protected final Duration heartbeat;
+
+    public ClusterMembership(KeyValueStore store, String nodeId, Duration heartbeat) {
+        this.store = (KeyValueStoreProvider) store;
+        this.nodeId = nodeId;
+        this.heartbeat = heartbeat;
+    }
+
+    /**
+     * Records the heartbeat of the current node.
+     */
+    public void join() {
+        store.put(PREFIX + nodeId, System.currentTimeMillis(), Math.max(1, heartbeat.getSeconds()));
+    }
+
+    /**
+     * Removes the current node, its shards being distributed over the other nodes.
+     */
+    public void leave() {
+        store.put(PREFIX + nodeId, (String) null);
+    }
+
+    /**
+     * Returns the live nodes, sorted by identifier.
+     */
+    public List<String> getNodes() {
+        try (Stream<String> keys = store.keyStream(PREFIX)) {
+            return keys.map(key -> key.substring(PREFIX.length()))
+                       .sorted()
+                       .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    /**
+     * Returns the shards, between {@code 0} and {@code shards - 1}, assigned to the current node.
+     */
+    public List<Integer> getAssignedShards(int shards) {
+        List<String> nodes = getNodes();
+        if (!nodes.contains(nodeId)) {
+            // heartbeat not visible yet, or expired, take the shards the node will be assigned
+            nodes.add(nodeId);
+            nodes.sort(null);
+        }
+        int size = nodes.size();
+        int index = nodes.indexOf(nodeId);
+        return IntStream.range(0, shards).filter(shard -> shard % size == index).boxed().collect(Collectors.toList());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+}
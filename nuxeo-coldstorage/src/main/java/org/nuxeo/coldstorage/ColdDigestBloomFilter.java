@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Bloom filter of strings, answering whether a string might have been added or has definitely not been added.
+ * <p>
+ * Its bits are held in a direct buffer, out of the heap, when they exceed {@value #OFF_HEAP_THRESHOLD_BYTES} bytes.
+ *
+ * @since 2021.4
+ */
+public class ColdDigestBloomFilter {
+
+    protected static final int OFF_HEAP_THRESHOLD_BYTES = 1 << 20;
+
+    protected final LongBuffer bits;
+
+    protected final long numBits;
+
+    protected final int numHashes;
+
+    /**
+     * @param expectedInsertions the number of strings expected to be added
+     * @param falsePositiveProbability the expected probability of a false positive once the expected number of strings
+     *            have been added
+     */
+    public ColdDigestBloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE / Long.BYTES, Math.max(1, (m + 63) / 64));
+        numBits = (long) words * 64;
+        numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        int bytes = words * Long.BYTES;
+        bits = bytes > OFF_HEAP_THRESHOLD_BYTES ? ByteBuffer.allocateDirect(bytes).asLongBuffer()
+                : LongBuffer.allocate(words);
+    }
+
+    /**
+     * Adds the given string to the filter.
+     */
+    public synchronized void put(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = bit(hash1 + i * hash2);
+            int word = (int) (bit >>> 6);
+            bits.put(word, bits.get(word) | (1L << bit));
+        }
+    }
+
+    /**
+     * Returns whether the given string might have been added to the filter, {@code false} meaning that it has
+     * definitely not been added.
+     */
+    public synchronized boolean mightContain(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = bit(hash1 + i * hash2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the bits of the filter are held out of the heap.
+     */
+    public boolean isOffHeap() {
+        return bits.isDirect();
+    }
+
+    protected long bit(int combinedHash) {
+        return (combinedHash < 0 ? ~combinedHash : combinedHash) % numBits;
+    }
+
+    /**
+     * Returns a 64-bit hash of the given string: FNV-1a followed by the MurmurHash3 finalizer.
+     */
+    protected static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.KeyValueStoreProvider;
+import org.nuxeo.runtime.pubsub.PubSubService;
+
+/**
+ * Cluster-wide set of the digests of the blobs in cold storage, held by the cold storage key/value store and mirrored
+ * on each node by a {@link ColdDigestBloomFilter}, so that most digests not in cold storage are told apart locally.
+ * <p>
+ * The set is updated on each move to or restore from cold storage, once its transaction is committed. The digests
+ * added on a node are published to the other ones to update their filter. Digests of blobs moved before the set
+ * existed are added by the {@link #reconcile reconciliation} of each repository, until which any digest
+ * {@link #mightBeCold might be cold} for this repository.
+ *
+ * @since 2021.4
+ */
+public class ColdDigestIndex {
+
+    private static final Logger log = LogManager.getLogger(ColdDigestIndex.class);
+
+    public static final String TOPIC = "coldstorageColdDigests";
+
+    protected static final String PREFIX = "coldDigest:";
+
+    protected static final String RECONCILED_PREFIX = "coldDigests.reconciled:";
+
+    protected static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    protected final KeyValueStoreProvider store;
+
+    protected final long expectedDigests;
+
+    protected final TransactionBuffer<Map<String, Boolean>> changes = new TransactionBuffer<>(LinkedHashMap::new,
+            values -> values.forEach(this::apply));
+
+    protected final Set<String> reconciledRepositories = ConcurrentHashMap.newKeySet();
+
+    protected final BiConsumer<String, byte[]> subscriber = this::onDigestAdded;
+
+    protected volatile ColdDigestBloomFilter filter;
+
+    protected PubSubService pubSubService;
+
+    /**
+     * @param expectedDigests the number of digests in cold storage the filter is sized for
+     */
+    public ColdDigestIndex(KeyValueStore store, long expectedDigests) {
+        this.store = (KeyValueStoreProvider) store;
+        this.expectedDigests = expectedDigests;
+        filter = new ColdDigestBloomFilter(expectedDigests, FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * Loads the filter of this node from the set, and subscribes to the digests added by the other nodes.
+     *
+     * @param pubSubService the service to publish and receive the digests added, {@code null} on a single node
+     */
+    public void start(PubSubService pubSubService) {
+        load();
+        this.pubSubService = pubSubService;
+        if (pubSubService != null) {
+            pubSubService.registerSubscriber(TOPIC, subscriber);
+        }
+    }
+
+    /**
+     * Unsubscribes from the digests added by the other nodes.
+     */
+    public void stop() {
+        if (pubSubService != null) {
+            pubSubService.unregisterSubscriber(TOPIC, subscriber);
+            pubSubService = null;
+        }
+    }
+
+    /**
+     * Records the move of the blob of the given digest to cold storage, the set is updated when the current
+     * transaction commits.
+     */
+    public void recordMove(String digest) {
+        record(digest, Boolean.TRUE);
+    }
+
+    /**
+     * Records the restore of the blob of the given digest from cold storage, the set is updated when the current
+     * transaction commits.
+     */
+    public void recordRestore(String digest) {
+        record(digest, Boolean.FALSE);
+    }
+
+    /**
+     * Returns whether the blob of the given digest, referenced by a document of the given repository, might be in
+     * cold storage, {@code false} meaning that it is definitely not.
+     */
+    public boolean mightBeCold(String repository, String digest) {
+        if (digest == null || !isReconciled(repository)) {
+            return true;
+        }
+        Map<String, Boolean> pending = changes.get();
+        if (pending != null && pending.containsKey(digest)) {
+            // moved or restored by the current transaction
+            return true;
+        }
+        if (!filter.mightContain(digest)) {
+            return false;
+        }
+        // the filter may give false positives, and doesn't forget the restored digests
+        return store.getString(PREFIX + digest) != null;
+    }
+
+    /**
+     * Adds the given digests in cold storage, referenced by the documents of the given repository, to the set.
+     *
+     * @return the number of digests added
+     */
+    public int reconcile(String repository, Collection<String> digests) {
+        int added = add(digests);
+        markReconciled(repository);
+        return added;
+    }
+
+    /**
+     * Adds the given digests in cold storage to the set, without marking any repository as reconciled.
+     *
+     * @return the number of digests added
+     */
+    public int add(Collection<String> digests) {
+        int added = 0;
+        for (String digest : digests) {
+            if (store.getString(PREFIX + digest) == null) {
+                apply(digest, Boolean.TRUE);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Marks the given repository as reconciled, all the digests in cold storage it references having been added.
+     */
+    public void markReconciled(String repository) {
+        store.put(RECONCILED_PREFIX + repository, String.valueOf(System.currentTimeMillis()));
+        reconciledRepositories.add(repository);
+    }
+
+    /**
+     * Loads the filter of this node from the set, sized for at least twice its current size.
+     */
+    public void load() {
+        long count;
+        try (Stream<String> keys = store.keyStream(PREFIX)) {
+            count = keys.count();
+        }
+        ColdDigestBloomFilter loaded = new ColdDigestBloomFilter(Math.max(expectedDigests, 2 * count),
+                FALSE_POSITIVE_PROBABILITY);
+        try (Stream<String> keys = store.keyStream(PREFIX)) {
+            keys.forEach(key -> loaded.put(key.substring(PREFIX.length())));
+        }
+        filter = loaded;
+        log.debug("Loaded the filter of the {} digests in cold storage, off heap: {}", () -> count, loaded::isOffHeap);
+    }
+
+    protected boolean isReconciled(String repository) {
+        if (reconciledRepositories.contains(repository)) {
+            return true;
+        }
+        if (store.getString(RECONCILED_PREFIX + repository) != null) {
+            reconciledRepositories.add(repository);
+            return true;
+        }
+        return false;
+    }
+
+    protected void record(String digest, Boolean cold) {
+        if (digest == null) {
+            return;
+        }
+        if (!changes.add(buffer -> buffer.put(digest, cold))) {
+            apply(digest, cold);
+        }
+    }
+
+    protected void apply(String digest, Boolean cold) {
+        try {
+            if (cold) {
+                store.put(PREFIX + digest, "1");
+                filter.put(digest);
+                if (pubSubService != null) {
+                    pubSubService.publish(TOPIC, digest.getBytes(UTF_8));
+                }
+            } else {
+                // the digest stays in the filters, which are then told apart by the set
+                store.put(PREFIX + digest, (String) null);
+            }
+        } catch (RuntimeException e) {
+            // a missing digest will be added by the next reconciliation
+            log.warn("Unable to update the cold storage digest: {}", digest, e);
+        }
+    }
+
+    protected void onDigestAdded(String topic, byte[] message) {
+        filter.put(new String(message, UTF_8));
+    }
+
+}
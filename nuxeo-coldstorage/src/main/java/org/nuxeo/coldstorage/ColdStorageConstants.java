@@ -34,6 +34,18 @@ public class ColdStorageConstants {
 
     public static final String COLD_STORAGE_TO_BE_RESTORED_PROPERTY = "coldstorage:toBeRestored";
 
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_RETRIEVAL_TIER_PROPERTY = "coldstorage:retrievalTier";
+
+    /**
+     * Whether the main content of the document is a temporary placeholder, until its placeholder rendition is computed.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY = "coldstorage:placeholderPending";
+
     public static final String GET_DOCUMENTS_TO_CHECK_QUERY = String.format(
             "SELECT * FROM Document, Relation WHERE ecm:mixinType = '%s' AND %s = 1", COLD_STORAGE_FACET_NAME,
             COLD_STORAGE_BEING_RETRIEVED_PROPERTY);
@@ -48,10 +60,64 @@ public class ColdStorageConstants {
 
     public static final String COLD_STORAGE_CHECK_CONTENT_AVAILABILITY_EVENT_NAME = "checkColdStorageContentAvailability";
 
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_RECONCILE_CONTENT_STATUS_EVENT_NAME = "reconcileColdStorageContentStatus";
+
     public static final String COLD_STORAGE_CONTENT_DOWNLOAD_EVENT_NAME = "coldStorageDownload";
 
     public static final String COLD_STORAGE_CONTENT_MOVED_EVENT_NAME = "coldStorageContentMoved";
 
+    /**
+     * Event fired once for a batch of documents moved to or restored from cold storage by the propagation of the move
+     * or restore of another document referencing the same blob.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME = "coldStorageContentPropagated";
+
+    /**
+     * Property of the {@link #COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME} event holding the propagated bulk action.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_PROPAGATED_ACTION_EVENT_PROPERTY = "propagatedAction";
+
+    /**
+     * Property of the {@link #COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME} event holding the identifiers of the updated
+     * documents.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_PROPAGATED_DOCUMENTS_EVENT_PROPERTY = "propagatedDocuments";
+
+    /**
+     * Property of the {@link #COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME} event holding the digests of the blobs of the
+     * updated documents.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_PROPAGATED_DIGESTS_EVENT_PROPERTY = "propagatedDigests";
+
+    /**
+     * Event fired when the cold storage content of a document is no longer available for download.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CONTENT_EXPIRED_EVENT_NAME = "coldStorageContentExpired";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_EXPIRE_CONTENT_EVENT_NAME = "expireColdStorageContent";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_RETRY_PLACEHOLDER_RENDITION_EVENT_NAME =
+            "retryColdStoragePlaceholderRendition";
+
     public static final String COLD_STORAGE_CONTENT_AVAILABLE_UNTIL_MAIL_TEMPLATE_KEY = "coldStorageAvailableUntil";
 
     public static final String COLD_STORAGE_CONTENT_AVAILABLE_NOTIFICATION_NAME = "ColdStorageContentAvailable";
@@ -66,6 +132,146 @@ public class ColdStorageConstants {
 
     public static final String COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL = "coldstorage:downloadableUntil";
 
+    /**
+     * Query of the documents of which cold storage content is available for download, i.e. retrieved and not expired.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CONTENT_STATUS_AVAILABLE_QUERY = String.format(
+            "SELECT * FROM Document, Relation WHERE ecm:mixinType = '%s' AND (%s = 0 OR %s IS NULL) AND %s > NOW()",
+            COLD_STORAGE_FACET_NAME, COLD_STORAGE_BEING_RETRIEVED_PROPERTY, COLD_STORAGE_BEING_RETRIEVED_PROPERTY,
+            COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL);
+
+    /**
+     * Query of the documents of which cold storage content was available for download until a date which has passed.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CONTENT_STATUS_EXPIRED_QUERY = String.format(
+            "SELECT * FROM Document, Relation WHERE ecm:mixinType = '%s' AND (%s = 0 OR %s IS NULL) AND %s <= NOW()",
+            COLD_STORAGE_FACET_NAME, COLD_STORAGE_BEING_RETRIEVED_PROPERTY, COLD_STORAGE_BEING_RETRIEVED_PROPERTY,
+            COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL);
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_BLOB_STATUS_CACHE_MAX_SIZE_PROPERTY_NAME = "nuxeo.coldstorage.blobStatus.cache.maxSize";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME = "nuxeo.coldstorage.blobStatus.cache.ttlSeconds";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME = "nuxeo.coldstorage.blobStatus.cache.ongoingRestoreTtlSeconds";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_PROPAGATION_MAX_DIGESTS_PER_COMMAND_PROPERTY_NAME = "nuxeo.coldstorage.propagation.maxDigestsPerCommand";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_KEY_VALUE_STORE_NAME = "coldstorage";
+
+    /**
+     * The key/value store holding the documents being retrieved.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_IN_FLIGHT_KEY_VALUE_STORE_NAME = "coldstorageInFlight";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME = "nuxeo.coldstorage.check.retrieve.expectedDelaySeconds";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME = "nuxeo.coldstorage.check.retrieve.backoffSeconds";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CHECK_RETRIEVE_MAX_BACKOFF_PROPERTY_NAME = "nuxeo.coldstorage.check.retrieve.maxBackoffSeconds";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CHECK_RETRIEVE_LEASE_PROPERTY_NAME = "nuxeo.coldstorage.check.retrieve.leaseSeconds";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CHECK_RETRIEVE_SHARDS_PROPERTY_NAME = "nuxeo.coldstorage.check.retrieve.shards";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CHECK_RETRIEVE_CRON_PROPERTY_NAME = "nuxeo.coldstorage.check.retrieve.state.cronExpression";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CHECK_RETRIEVE_HEARTBEAT_PROPERTY_NAME = "nuxeo.coldstorage.check.retrieve.heartbeatSeconds";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_RETRIEVE_TIER_INTERACTIVE_PROPERTY_NAME = "nuxeo.coldstorage.retrieve.tier.interactive";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_RETRIEVE_TIER_BULK_PROPERTY_NAME = "nuxeo.coldstorage.retrieve.tier.bulk";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_RETRIEVE_TIER_EXPEDITED_MAX_SIZE_PROPERTY_NAME = "nuxeo.coldstorage.retrieve.tier.expeditedMaxSize";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_METRICS_DOCUMENT_COUNT_REFRESH_PROPERTY_NAME = "nuxeo.coldstorage.metrics.documentCount.refreshSeconds";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME = "nuxeo.coldstorage.checkAlreadyInColdStorage.strictConsistency";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_COLD_DIGESTS_EXPECTED_SIZE_PROPERTY_NAME = "nuxeo.coldstorage.coldDigests.expectedSize";
+
+    /**
+     * Context data set on a document moved to cold storage when the storage class of its main blob was updated by the
+     * move.
+     *
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_CLASS_UPDATED_CONTEXT_DATA = "coldStorageClassUpdated";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_BULK_SAVE_BATCH_SIZE_PROPERTY_NAME = "nuxeo.coldstorage.bulk.saveBatchSize";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_PLACEHOLDER_ASYNC_PROPERTY_NAME = "nuxeo.coldstorage.placeholder.async";
+
+    /**
+     * @since 2021.4
+     */
+    public static final String COLD_STORAGE_PLACEHOLDER_REUSE_STORED_BLOBS_PROPERTY_NAME = "nuxeo.coldstorage.placeholder.reuseStoredBlobs";
+
     public static final String EVENT_CATEGORY = "coldStorage";
 
     public static final String EVENT_CATEGORY_LABEL = "Cold Storage";
@@ -0,0 +1,155 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BEING_RETRIEVED_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_FACET_NAME;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.ColdStorageConstants.ColdStorageContentStatus;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * Cluster-wide counters of the documents of which cold storage content is being retrieved or available, per
+ * repository.
+ * <p>
+ * The counters are updated incrementally on each transition of a document, once its transaction is committed. They
+ * can drift, e.g. when an available content expires or when a transition happens concurrently with a
+ * {@link #reset reconciliation}, which is why they are periodically reconciled with the actual counts.
+ *
+ * @since 2021.4
+ */
+public class ColdStorageContentStatusCounters {
+
+    private static final Logger log = LogManager.getLogger(ColdStorageContentStatusCounters.class);
+
+    /** The document is not being retrieved nor available. */
+    public static final int STATE_NONE = 0;
+
+    /** The cold storage content of the document is being retrieved. */
+    public static final int STATE_BEING_RETRIEVED = 1;
+
+    /** The cold storage content of the document is available for download, until a date not reached yet. */
+    public static final int STATE_AVAILABLE = 2;
+
+    protected static final String BEING_RETRIEVED_PREFIX = "contentStatus.beingRetrieved:";
+
+    protected static final String AVAILABLE_PREFIX = "contentStatus.available:";
+
+    protected final KeyValueStore store;
+
+    protected final TransactionBuffer<Map<String, long[]>> deltas = new TransactionBuffer<>(HashMap::new,
+            values -> values.forEach((repository, delta) -> apply(repository, delta[0], delta[1])));
+
+    public ColdStorageContentStatusCounters(KeyValueStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Returns the state of the given document, as counted by these counters.
+     */
+    public static int getState(DocumentModel doc) {
+        if (!doc.hasFacet(COLD_STORAGE_FACET_NAME)) {
+            return STATE_NONE;
+        }
+        if (Boolean.TRUE.equals(doc.getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY))) {
+            return STATE_BEING_RETRIEVED;
+        }
+        Serializable downloadableUntil = doc.getPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL);
+        long until;
+        if (downloadableUntil instanceof Calendar) {
+            until = ((Calendar) downloadableUntil).getTimeInMillis();
+        } else if (downloadableUntil instanceof Date) {
+            until = ((Date) downloadableUntil).getTime();
+        } else {
+            return STATE_NONE;
+        }
+        return until > System.currentTimeMillis() ? STATE_AVAILABLE : STATE_NONE;
+    }
+
+    /**
+     * Records the transition of a document of the given repository from a state to another, the counters are updated
+     * when the current transaction commits.
+     */
+    public void recordTransition(String repository, int before, int after) {
+        if (before == after) {
+            return;
+        }
+        long beingRetrieved = delta(before, after, STATE_BEING_RETRIEVED);
+        long available = delta(before, after, STATE_AVAILABLE);
+        boolean buffered = deltas.add(buffer -> {
+            long[] delta = buffer.computeIfAbsent(repository, k -> new long[2]);
+            delta[0] += beingRetrieved;
+            delta[1] += available;
+        });
+        if (!buffered) {
+            apply(repository, beingRetrieved, available);
+        }
+    }
+
+    /**
+     * Returns the current status of the given repository.
+     */
+    public ColdStorageContentStatus getStatus(String repository) {
+        return new ColdStorageContentStatus(getCount(BEING_RETRIEVED_PREFIX + repository),
+                getCount(AVAILABLE_PREFIX + repository));
+    }
+
+    /**
+     * Resets the counters of the given repository to the actual counts.
+     */
+    public void reset(String repository, long beingRetrieved, long available) {
+        store.put(BEING_RETRIEVED_PREFIX + repository, beingRetrieved);
+        store.put(AVAILABLE_PREFIX + repository, available);
+    }
+
+    protected void apply(String repository, long beingRetrieved, long available) {
+        try {
+            if (beingRetrieved != 0) {
+                store.addAndGet(BEING_RETRIEVED_PREFIX + repository, beingRetrieved);
+            }
+            if (available != 0) {
+                store.addAndGet(AVAILABLE_PREFIX + repository, available);
+            }
+        } catch (RuntimeException e) {
+            // the counters will be fixed by the next reconciliation
+            log.warn("Unable to update the cold storage content status of repository: {}", repository, e);
+        }
+    }
+
+    protected int getCount(String key) {
+        Long count = store.getLong(key);
+        // a transient negative value may come from a transition of a document counted before the last reconciliation
+        return count == null ? 0 : (int) Math.max(0, Math.min(Integer.MAX_VALUE, count));
+    }
+
+    protected static long delta(int before, int after, int state) {
+        return (after == state ? 1 : 0) - (before == state ? 1 : 0);
+    }
+
+}
@@ -19,13 +19,16 @@
 package org.nuxeo.coldstorage;
 
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_RETRIEVAL_TIER_PROPERTY;
 
 import java.io.IOException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.service.ColdStorageService;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.blob.BlobProvider;
 import org.nuxeo.ecm.core.blob.BlobStatus;
@@ -42,20 +45,68 @@ public class ColdStorageHelper {
     private static final Logger log = LogManager.getLogger(ColdStorageHelper.class);
 
     public static BlobStatus getBlobStatus(DocumentModel doc) {
+        return getBlobStatus(doc, true);
+    }
+
+    /**
+     * Returns the status of the cold storage content of the given document.
+     *
+     * @param useCache {@code false} to get the status from the blob provider, where a stale status would be harmful
+     * @since 2021.4
+     */
+    public static BlobStatus getBlobStatus(DocumentModel doc, boolean useCache) {
         Blob coldContent = (Blob) doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
-        return getStatus((ManagedBlob) coldContent);
+        return getStatus((ManagedBlob) coldContent, useCache);
     }
 
     public static BlobStatus getStatus(ManagedBlob blob) {
+        return getStatus(blob, true);
+    }
+
+    /**
+     * Returns the status of the given blob, the status got from the blob provider being cached.
+     *
+     * @param useCache {@code false} to get the status from the blob provider, where a stale status would be harmful
+     * @since 2021.4
+     */
+    public static BlobStatus getStatus(ManagedBlob blob, boolean useCache) {
+        BlobStatusCache cache = Framework.getService(ColdStorageService.class).getBlobStatusCache();
+        BlobStatus status = useCache ? cache.get(blob.getKey()) : null;
+        if (status != null) {
+            return status;
+        }
         try {
             BlobProvider provider = Framework.getService(BlobManager.class).getBlobProvider(blob);
-            return provider.getStatus(blob);
+            long start = System.nanoTime();
+            try {
+                status = provider.getStatus(blob);
+            } finally {
+                ColdStorageMetrics.updateBlobProviderTimer(ColdStorageMetrics.METHOD_GET_STATUS, start);
+            }
+            cache.put(blob.getKey(), status);
+            return status;
         } catch (IOException e) {
             log.error("Unable to get blob status for blob: {}", blob, e);
             return null;
         }
     }
 
+    /**
+     * Returns the tier of the ongoing or last retrieval of the cold storage content of the given document,
+     * {@link RetrievalTier#STANDARD} if unknown.
+     *
+     * @since 2021.4
+     */
+    public static RetrievalTier getRetrievalTier(DocumentModel doc) {
+        RetrievalTier tier = null;
+        try {
+            tier = RetrievalTier.parse((String) doc.getPropertyValue(COLD_STORAGE_RETRIEVAL_TIER_PROPERTY));
+        } catch (NuxeoException e) {
+            log.warn("Invalid retrieval tier on document: {}", doc.getId(), e);
+        }
+        return tier == null ? RetrievalTier.STANDARD : tier;
+    }
+
     public static boolean isDownloadable(BlobStatus blobStatus) {
         // XXX for now, only use case where storage class != null is cold storage
         // to be rewritten when more storage class supported
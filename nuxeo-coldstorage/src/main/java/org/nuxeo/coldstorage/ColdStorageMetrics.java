@@ -0,0 +1,291 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_FACET_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_TO_BE_RESTORED_PROPERTY;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.ColdStorageConstants.ColdStorageContentStatus;
+import org.nuxeo.coldstorage.service.ColdStorageService;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.repository.RepositoryManager;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import io.dropwizard.metrics5.CachedGauge;
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.RatioGauge;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
+/**
+ * Metrics of the cold storage, registered in the Nuxeo metrics registry so that they are exported by the configured
+ * reporters.
+ * <p>
+ * Operations are timed by {@code nuxeo.coldstorage.operation} timers tagged by {@code operation} and
+ * {@code outcome}, blob provider calls by {@code nuxeo.coldstorage.blobprovider} timers tagged by {@code method}, the
+ * scheduled availability checks by {@code nuxeo.coldstorage.check.availability} timers tagged by the {@code node}
+ * which ran them, along with the {@code nuxeo.coldstorage.check.availability.shards} counters of checked shards,
+ * the documents saved by each batch of the bulk actions by {@code nuxeo.coldstorage.bulk.saved} histograms tagged by
+ * {@code action}, and the placeholder renditions by {@code nuxeo.coldstorage.placeholder} counters tagged by
+ * {@code outcome}, whether a stored derived blob was reused or the rendition computed.
+ *
+ * @since 2021.4
+ */
+public class ColdStorageMetrics {
+
+    private static final Logger log = LogManager.getLogger(ColdStorageMetrics.class);
+
+    public static final String OPERATION_MOVE = "move";
+
+    public static final String OPERATION_RETRIEVE = "retrieve";
+
+    public static final String OPERATION_RESTORE = "restore";
+
+    public static final String OPERATION_CHECK_IS_RETRIEVED = "checkIsRetrieved";
+
+    public static final String OPERATION_GET_RENDITION = "getRendition";
+
+    public static final String OUTCOME_SUCCESS = "success";
+
+    public static final String OUTCOME_FAILURE = "failure";
+
+    public static final String OUTCOME_RETRIEVED = "retrieved";
+
+    public static final String OUTCOME_NOT_RETRIEVED = "notRetrieved";
+
+    public static final String OUTCOME_REUSED = "reused";
+
+    public static final String OUTCOME_COMPUTED = "computed";
+
+    public static final String METHOD_UPDATE_BLOB = "updateBlob";
+
+    public static final String METHOD_GET_STATUS = "getStatus";
+
+    public static final MetricName OPERATION_TIMER = MetricName.build("nuxeo", "coldstorage", "operation");
+
+    public static final MetricName BLOB_PROVIDER_TIMER = MetricName.build("nuxeo", "coldstorage", "blobprovider");
+
+    public static final MetricName AVAILABILITY_CHECK_TIMER = MetricName.build("nuxeo", "coldstorage", "check",
+            "availability");
+
+    public static final MetricName AVAILABILITY_CHECK_SHARDS_COUNTER = MetricName.build("nuxeo", "coldstorage",
+            "check", "availability", "shards");
+
+    public static final MetricName PROPAGATION_REQUESTED_COUNTER = MetricName.build("nuxeo", "coldstorage",
+            "propagation", "requested");
+
+    public static final MetricName PROPAGATION_SUBMITTED_COUNTER = MetricName.build("nuxeo", "coldstorage",
+            "propagation", "submitted");
+
+    public static final MetricName SAVED_DOCUMENTS_HISTOGRAM = MetricName.build("nuxeo", "coldstorage", "bulk",
+            "saved");
+
+    public static final MetricName PLACEHOLDER_COUNTER = MetricName.build("nuxeo", "coldstorage", "placeholder");
+
+    public static final MetricName PLACEHOLDER_REUSE_RATIO_GAUGE = MetricName.build("nuxeo", "coldstorage",
+            "placeholder", "reuse", "ratio");
+
+    public static final MetricName BEING_RETRIEVED_GAUGE = MetricName.build("nuxeo", "coldstorage", "documents",
+            "beingRetrieved");
+
+    public static final MetricName AVAILABLE_GAUGE = MetricName.build("nuxeo", "coldstorage", "documents", "available");
+
+    public static final MetricName TO_BE_RESTORED_GAUGE = MetricName.build("nuxeo", "coldstorage", "documents",
+            "toBeRestored");
+
+    public static final MetricName STATUS_CACHE_HITS_GAUGE = MetricName.build("nuxeo", "coldstorage", "blobstatus",
+            "cache", "hits");
+
+    public static final MetricName STATUS_CACHE_MISSES_GAUGE = MetricName.build("nuxeo", "coldstorage", "blobstatus",
+            "cache", "misses");
+
+    protected static final String GET_DOCUMENTS_TO_BE_RESTORED_QUERY = String.format(
+            "SELECT * FROM Document WHERE ecm:mixinType = '%s' AND %s = 1", COLD_STORAGE_FACET_NAME,
+            COLD_STORAGE_TO_BE_RESTORED_PROPERTY);
+
+    protected static final List<MetricName> GAUGES = List.of(BEING_RETRIEVED_GAUGE, AVAILABLE_GAUGE,
+            TO_BE_RESTORED_GAUGE, STATUS_CACHE_HITS_GAUGE, STATUS_CACHE_MISSES_GAUGE, PLACEHOLDER_REUSE_RATIO_GAUGE);
+
+    protected static final MetricRegistry REGISTRY = SharedMetricRegistries.getOrCreate(
+            MetricsService.class.getName());
+
+    private ColdStorageMetrics() {
+        // utility class
+    }
+
+    /**
+     * Times the given operation, tagging the timer with the {@link #OUTCOME_FAILURE} outcome if it throws, with the
+     * {@link #OUTCOME_SUCCESS} outcome otherwise.
+     */
+    public static <T> T timeOperation(String operation, Supplier<T> supplier) {
+        long start = System.nanoTime();
+        String outcome = OUTCOME_FAILURE;
+        try {
+            T result = supplier.get();
+            outcome = OUTCOME_SUCCESS;
+            return result;
+        } finally {
+            updateOperationTimer(operation, outcome, start);
+        }
+    }
+
+    /**
+     * Updates the timer of the given operation and outcome with the time elapsed since {@code start}, as returned by
+     * {@link System#nanoTime()}.
+     */
+    public static void updateOperationTimer(String operation, String outcome, long start) {
+        REGISTRY.timer(OPERATION_TIMER.tagged("operation", operation, "outcome", outcome))
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Updates the timer of the given blob provider method with the time elapsed since {@code start}, as returned by
+     * {@link System#nanoTime()}.
+     */
+    public static void updateBlobProviderTimer(String method, long start) {
+        REGISTRY.timer(BLOB_PROVIDER_TIMER.tagged("method", method))
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Updates the timer of the scheduled availability check run by the given node with the time elapsed since
+     * {@code start}, as returned by {@link System#nanoTime()}, and counts the shards it checked.
+     */
+    public static void updateAvailabilityCheckTimer(String nodeId, int shards, long start) {
+        REGISTRY.timer(AVAILABILITY_CHECK_TIMER.tagged("node", nodeId))
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        REGISTRY.counter(AVAILABILITY_CHECK_SHARDS_COUNTER.tagged("node", nodeId)).inc(shards);
+    }
+
+    /**
+     * Counts a propagation command requested for the given bulk action.
+     */
+    public static void incrementPropagationRequested(String action) {
+        REGISTRY.counter(PROPAGATION_REQUESTED_COUNTER.tagged("action", action)).inc();
+    }
+
+    /**
+     * Counts a propagation command submitted to the bulk service for the given bulk action.
+     */
+    public static void incrementPropagationSubmitted(String action) {
+        REGISTRY.counter(PROPAGATION_SUBMITTED_COUNTER.tagged("action", action)).inc();
+    }
+
+    /**
+     * Records the number of documents saved by a batch of the given bulk action, one save call being done per document.
+     */
+    public static void updateSavedDocumentsHistogram(String action, int savedDocuments) {
+        REGISTRY.histogram(SAVED_DOCUMENTS_HISTOGRAM.tagged("action", action)).update(savedDocuments);
+    }
+
+    /**
+     * Counts a placeholder rendition with the given outcome, {@link #OUTCOME_REUSED} if a stored derived blob was
+     * reused, {@link #OUTCOME_COMPUTED} if the rendition was computed.
+     */
+    public static void incrementPlaceholder(String outcome) {
+        REGISTRY.counter(PLACEHOLDER_COUNTER.tagged("outcome", outcome)).inc();
+    }
+
+    /**
+     * Registers the gauges of the cold storage.
+     * <p>
+     * The documents being retrieved or available are read from the {@link ColdStorageContentStatusCounters}, counting
+     * the documents to be restored requires a query per repository, its result is kept for the given number of seconds
+     * whatever the reporting frequency.
+     */
+    public static void registerGauges(long refreshSeconds) {
+        unregisterGauges();
+        REGISTRY.register(BEING_RETRIEVED_GAUGE,
+                (Gauge<Long>) () -> sumContentStatus(ColdStorageContentStatus::getTotalBeingRetrieved));
+        REGISTRY.register(AVAILABLE_GAUGE,
+                (Gauge<Long>) () -> sumContentStatus(ColdStorageContentStatus::getTotalAvailable));
+        REGISTRY.register(TO_BE_RESTORED_GAUGE,
+                new DocumentCountGauge(GET_DOCUMENTS_TO_BE_RESTORED_QUERY, refreshSeconds));
+        REGISTRY.register(STATUS_CACHE_HITS_GAUGE, (Gauge<Long>) () -> getBlobStatusCache().getHitCount());
+        REGISTRY.register(STATUS_CACHE_MISSES_GAUGE, (Gauge<Long>) () -> getBlobStatusCache().getMissCount());
+        REGISTRY.register(PLACEHOLDER_REUSE_RATIO_GAUGE, new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long reused = REGISTRY.counter(PLACEHOLDER_COUNTER.tagged("outcome", OUTCOME_REUSED)).getCount();
+                long computed = REGISTRY.counter(PLACEHOLDER_COUNTER.tagged("outcome", OUTCOME_COMPUTED)).getCount();
+                return Ratio.of(reused, reused + computed);
+            }
+        });
+    }
+
+    /**
+     * Unregisters the gauges of the cold storage.
+     */
+    public static void unregisterGauges() {
+        GAUGES.forEach(REGISTRY::remove);
+    }
+
+    protected static long sumContentStatus(ToIntFunction<ColdStorageContentStatus> total) {
+        ColdStorageContentStatusCounters counters = Framework.getService(ColdStorageService.class)
+                                                             .getContentStatusCounters();
+        return Framework.getService(RepositoryManager.class)
+                        .getRepositoryNames()
+                        .stream()
+                        .mapToLong(repository -> total.applyAsInt(counters.getStatus(repository)))
+                        .sum();
+    }
+
+    protected static BlobStatusCache getBlobStatusCache() {
+        return Framework.getService(ColdStorageService.class).getBlobStatusCache();
+    }
+
+    /**
+     * Gauge of the number of documents matching a query, summed over the repositories.
+     */
+    protected static class DocumentCountGauge extends CachedGauge<Long> {
+
+        protected final String query;
+
+        protected DocumentCountGauge(String query, long refreshSeconds) {
+            super(refreshSeconds, TimeUnit.SECONDS);
+            this.query = query;
+        }
+
+        @Override
+        protected Long loadValue() {
+            try {
+                long count = 0;
+                for (String repository : Framework.getService(RepositoryManager.class).getRepositoryNames()) {
+                    count += TransactionHelper.runInTransaction(() -> CoreInstance.doPrivileged(repository,
+                            session -> session.query(query, null, 1, 0, true).totalSize()));
+                }
+                return count;
+            } catch (RuntimeException e) {
+                log.warn("Unable to count the documents matching: {}", query, e);
+                return -1L;
+            }
+        }
+    }
+
+}
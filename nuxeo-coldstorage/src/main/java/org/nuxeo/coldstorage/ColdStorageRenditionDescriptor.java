@@ -43,6 +43,30 @@ public class ColdStorageRenditionDescriptor implements Descriptor {
     @XNode("@renditionName")
     protected String renditionName;
 
+    /**
+     * @since 2021.4
+     */
+    @XNode("@mimeType")
+    protected String mimeType;
+
+    /**
+     * @since 2021.4
+     */
+    @XNode("@minSize")
+    protected Long minSize;
+
+    /**
+     * @since 2021.4
+     */
+    @XNode("@maxSize")
+    protected Long maxSize;
+
+    /**
+     * @since 2021.4
+     */
+    @XNode("@priority")
+    protected int priority;
+
     @Override
     public String getId() {
         return name;
@@ -64,4 +88,45 @@ public class ColdStorageRenditionDescriptor implements Descriptor {
         return renditionName;
     }
 
+    /**
+     * Returns the mime type the main content must have, possibly ending with a {@code /*} wildcard.
+     *
+     * @since 2021.4
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Returns the minimal length, inclusive, of the main content.
+     *
+     * @since 2021.4
+     */
+    public Long getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Returns the maximal length, exclusive, of the main content.
+     *
+     * @since 2021.4
+     */
+    public Long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @since 2021.4
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @since 2021.4
+     */
+    public boolean hasContentCondition() {
+        return mimeType != null || minSize != null || maxSize != null;
+    }
+
 }
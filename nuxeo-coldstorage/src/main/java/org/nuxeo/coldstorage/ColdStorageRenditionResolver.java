@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.nuxeo.coldstorage.ColdStorageConstants.FILE_CONTENT_PROPERTY;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+/**
+ * Resolves the name of the rendition replacing the main content of a document moved to cold storage, from the
+ * contributed {@link ColdStorageRenditionDescriptor}s.
+ * <p>
+ * Descriptors are compiled into rules evaluated in a deterministic order:
+ * <ol>
+ * <li>by descending priority,</li>
+ * <li>then rules on the document type, rules on a facet, and rules on the main content only,</li>
+ * <li>then by descriptor name.</li>
+ * </ol>
+ * A descriptor with both a document type and a facet matches documents of that type or having that facet. A descriptor
+ * without any condition defines the default rendition.
+ * <p>
+ * As the outcome only depends on the document type, its facets, the mime type of its main content and the range its
+ * length falls in among the contributed bounds, decisions are memoized on these.
+ *
+ * @since 2021.4
+ */
+public class ColdStorageRenditionResolver {
+
+    protected static final int MAX_DECISIONS = 10_000;
+
+    protected final List<Rule> rules;
+
+    protected final String defaultRendition;
+
+    protected final boolean contentDependent;
+
+    protected final long[] sizeBounds;
+
+    protected final Map<String, Optional<String>> decisions = new ConcurrentHashMap<>();
+
+    public ColdStorageRenditionResolver(Collection<ColdStorageRenditionDescriptor> descriptors) {
+        List<Rule> compiled = new ArrayList<>();
+        String defaultName = null;
+        for (ColdStorageRenditionDescriptor descriptor : descriptors) {
+            if (descriptor.getDocType() != null) {
+                compiled.add(new Rule(descriptor, Rule.DOC_TYPE));
+            }
+            if (descriptor.getFacet() != null) {
+                compiled.add(new Rule(descriptor, Rule.FACET));
+            }
+            if (descriptor.getDocType() == null && descriptor.getFacet() == null) {
+                if (descriptor.hasContentCondition()) {
+                    compiled.add(new Rule(descriptor, Rule.CONTENT));
+                } else {
+                    defaultName = descriptor.getRenditionName();
+                }
+            }
+        }
+        compiled.sort(Comparator.comparingInt((Rule rule) -> -rule.priority)
+                                .thenComparingInt(rule -> rule.kind)
+                                .thenComparing(rule -> rule.name, Comparator.nullsLast(Comparator.naturalOrder())));
+        rules = List.copyOf(compiled);
+        defaultRendition = defaultName;
+        contentDependent = rules.stream().anyMatch(rule -> rule.descriptor.hasContentCondition());
+        sizeBounds = rules.stream()
+                          .flatMap(rule -> Stream.of(rule.descriptor.getMinSize(), rule.descriptor.getMaxSize()))
+                          .filter(Objects::nonNull)
+                          .mapToLong(Long::longValue)
+                          .sorted()
+                          .distinct()
+                          .toArray();
+    }
+
+    public String getDefaultRendition() {
+        return defaultRendition;
+    }
+
+    /**
+     * Returns the rendition name for the given document, or the default rendition name, possibly {@code null}, if no
+     * rule matches.
+     */
+    public String resolve(DocumentModel doc) {
+        String mimeType = null;
+        long length = -1;
+        if (contentDependent && doc.hasSchema("file")) {
+            Blob content = (Blob) doc.getPropertyValue(FILE_CONTENT_PROPERTY);
+            if (content != null) {
+                mimeType = content.getMimeType();
+                length = content.getLength();
+            }
+        }
+        return resolve(doc.getType(), doc.getFacets(), mimeType, length);
+    }
+
+    /**
+     * Returns the rendition name for the given document characteristics, or the default rendition name, possibly
+     * {@code null}, if no rule matches.
+     *
+     * @param length the length of the main content, {@code -1} if unknown
+     */
+    public String resolve(String docType, Set<String> facets, String mimeType, long length) {
+        String mime = contentDependent && mimeType != null ? mimeType.toLowerCase() : null;
+        String key = docType + '|' + String.join(",", new TreeSet<>(facets)) + '|' + mime + '|'
+                + (contentDependent ? getSizeBucket(length) : 0);
+        Optional<String> decision = decisions.get(key);
+        if (decision == null) {
+            decision = rules.stream()
+                            .filter(rule -> rule.matches(docType, facets, mime, length))
+                            .map(rule -> rule.descriptor.getRenditionName())
+                            .findFirst();
+            if (decisions.size() >= MAX_DECISIONS) {
+                decisions.clear();
+            }
+            decisions.put(key, decision);
+        }
+        return decision.orElse(defaultRendition);
+    }
+
+    public List<String> getRuleNames() {
+        return rules.stream().map(rule -> rule.name).collect(Collectors.toList());
+    }
+
+    protected int getSizeBucket(long length) {
+        if (length < 0) {
+            return -1;
+        }
+        // the number of bounds lower than or equal to the length, lengths with the same count match the same rules
+        int index = Arrays.binarySearch(sizeBounds, length);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    protected static class Rule {
+
+        protected static final int DOC_TYPE = 0;
+
+        protected static final int FACET = 1;
+
+        protected static final int CONTENT = 2;
+
+        protected final ColdStorageRenditionDescriptor descriptor;
+
+        protected final int kind;
+
+        protected final int priority;
+
+        protected final String name;
+
+        protected Rule(ColdStorageRenditionDescriptor descriptor, int kind) {
+            this.descriptor = descriptor;
+            this.kind = kind;
+            this.priority = descriptor.getPriority();
+            this.name = descriptor.getName();
+        }
+
+        protected boolean matches(String docType, Set<String> facets, String mimeType, long length) {
+            if (kind == DOC_TYPE && !descriptor.getDocType().equals(docType)) {
+                return false;
+            }
+            if (kind == FACET && !facets.contains(descriptor.getFacet())) {
+                return false;
+            }
+            return matchesMimeType(mimeType) && matchesLength(length);
+        }
+
+        protected boolean matchesMimeType(String mimeType) {
+            String pattern = descriptor.getMimeType();
+            if (pattern == null) {
+                return true;
+            }
+            if (mimeType == null) {
+                return false;
+            }
+            pattern = pattern.toLowerCase();
+            if (pattern.endsWith("/*")) {
+                return mimeType.startsWith(pattern.substring(0, pattern.length() - 1));
+            }
+            return mimeType.equals(pattern);
+        }
+
+        protected boolean matchesLength(long length) {
+            Long minSize = descriptor.getMinSize();
+            Long maxSize = descriptor.getMaxSize();
+            if (minSize == null && maxSize == null) {
+                return true;
+            }
+            return length >= 0 && (minSize == null || length >= minSize) && (maxSize == null || length < maxSize);
+        }
+    }
+
+}
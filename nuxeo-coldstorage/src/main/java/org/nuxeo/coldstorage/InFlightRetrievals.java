@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.nuxeo.coldstorage.ColdStorageContentStatusCounters.STATE_BEING_RETRIEVED;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.KeyValueStoreProvider;
+
+/**
+ * Cluster-wide set of the documents of which cold storage content is being retrieved, per repository, held by a
+ * dedicated key/value store so that the documents to check can be listed without querying the repository.
+ * <p>
+ * Each document is recorded with the key of its cold storage content blob, allowing to split the documents into
+ * {@link #getShard shards} checked independently, the documents sharing a blob belonging to the same shard.
+ * <p>
+ * The set is updated on each transition of a document, once its transaction is committed. It is periodically
+ * {@link #reset reconciled} with the actual documents being retrieved, and must be reconciled before its first use for
+ * a repository, see {@link #isReconciled}.
+ *
+ * @since 2021.4
+ */
+public class InFlightRetrievals {
+
+    private static final Logger log = LogManager.getLogger(InFlightRetrievals.class);
+
+    protected final KeyValueStoreProvider store;
+
+    protected static final String RECONCILED_PREFIX = "reconciled:";
+
+    protected final TransactionBuffer<Map<String, String>> changes = new TransactionBuffer<>(LinkedHashMap::new,
+            values -> values.forEach(this::apply));
+
+    protected final Set<String> reconciledRepositories = ConcurrentHashMap.newKeySet();
+
+    public InFlightRetrievals(KeyValueStore store) {
+        this.store = (KeyValueStoreProvider) store;
+    }
+
+    /**
+     * Records the transition of a document of the given repository from a state to another, as defined by
+     * {@link ColdStorageContentStatusCounters}, the set is updated when the current transaction commits.
+     *
+     * @param blobKey the key of the cold storage content blob of the document
+     */
+    public void recordTransition(String repository, String docId, String blobKey, int before, int after) {
+        boolean wasInFlight = before == STATE_BEING_RETRIEVED;
+        boolean inFlight = after == STATE_BEING_RETRIEVED;
+        if (wasInFlight == inFlight) {
+            return;
+        }
+        String key = getKey(repository, docId);
+        String value = inFlight ? Objects.requireNonNullElse(blobKey, "") : null;
+        if (!changes.add(buffer -> buffer.put(key, value))) {
+            apply(key, value);
+        }
+    }
+
+    /**
+     * Returns the identifiers of the documents of the given repository being retrieved.
+     */
+    public List<String> getDocumentIds(String repository) {
+        String prefix = getKey(repository, "");
+        try (Stream<String> keys = store.keyStream(prefix)) {
+            return keys.map(key -> key.substring(prefix.length())).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the documents of the given repository being retrieved, mapped to the key of their cold storage content
+     * blob.
+     */
+    public Map<String, String> getDocuments(String repository) {
+        String prefix = getKey(repository, "");
+        List<String> keys = getDocumentIds(repository).stream()
+                                                      .map(docId -> prefix + docId)
+                                                      .collect(Collectors.toList());
+        Map<String, String> documents = new HashMap<>();
+        // documents removed meanwhile are missing from the values
+        store.getStrings(keys).forEach((key, blobKey) -> documents.put(key.substring(prefix.length()), blobKey));
+        return documents;
+    }
+
+    /**
+     * Resets the documents of the given repository being retrieved to the given ones.
+     *
+     * @param documents the documents being retrieved, mapped to the key of their cold storage content blob
+     * @return the number of documents added, removed or updated
+     */
+    public int reset(String repository, Map<String, String> documents) {
+        Map<String, String> expected = new HashMap<>();
+        documents.forEach((docId, blobKey) -> expected.put(docId, Objects.requireNonNullElse(blobKey, "")));
+        int changed = 0;
+        for (Entry<String, String> current : getDocuments(repository).entrySet()) {
+            String blobKey = expected.remove(current.getKey());
+            if (!current.getValue().equals(blobKey)) {
+                apply(getKey(repository, current.getKey()), blobKey);
+                changed++;
+            }
+        }
+        for (Entry<String, String> missing : expected.entrySet()) {
+            apply(getKey(repository, missing.getKey()), missing.getValue());
+            changed++;
+        }
+        store.put(RECONCILED_PREFIX + repository, String.valueOf(System.currentTimeMillis()));
+        reconciledRepositories.add(repository);
+        return changed;
+    }
+
+    /**
+     * Returns whether the documents of the given repository being retrieved were reconciled since the set was
+     * deployed, or since an update of the set failed.
+     */
+    public boolean isReconciled(String repository) {
+        if (reconciledRepositories.contains(repository)) {
+            return true;
+        }
+        if (store.getString(RECONCILED_PREFIX + repository) != null) {
+            reconciledRepositories.add(repository);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the shard, between {@code 0} and {@code shards - 1}, of the documents of which cold storage content is
+     * the given blob.
+     */
+    public static int getShard(String blobKey, int shards) {
+        return Math.floorMod(blobKey.hashCode(), shards);
+    }
+
+    /**
+     * Adds the given document to the set, or removes it if {@code blobKey} is {@code null}.
+     */
+    protected void apply(String key, String blobKey) {
+        try {
+            store.put(key, blobKey);
+        } catch (RuntimeException e) {
+            // the set will be fixed by the next reconciliation, which the next check of the repository triggers
+            log.warn("Unable to update the cold storage retrieval in flight: {}", key, e);
+            String repository = key.substring(0, key.indexOf('/'));
+            reconciledRepositories.remove(repository);
+            try {
+                store.put(RECONCILED_PREFIX + repository, (String) null);
+            } catch (RuntimeException ee) {
+                log.debug("Unable to require the reconciliation of repository: {}", repository, ee);
+            }
+        }
+    }
+
+    protected static String getKey(String repository, String docId) {
+        return repository + '/' + docId;
+    }
+
+}
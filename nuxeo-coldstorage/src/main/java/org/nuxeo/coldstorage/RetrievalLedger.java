@@ -0,0 +1,256 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.KeyValueStoreProvider;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cluster-wide ledger of the restores requested from the cold storage, keyed by blob key and shared by all the
+ * documents referencing a blob.
+ * <p>
+ * An entry records the tier and time of the restore request, and its completion time once the blob is available. The
+ * first request of a blob creates its entry, the next ones join it instead of requesting the restore again. Each
+ * document waiting for the restore is recorded under its own key along with the user who requested it, so that joining
+ * a restore is a single write whatever the number of documents sharing the blob. Once the blob is available, all the
+ * waiting documents can be resolved in a single pass.
+ * <p>
+ * Entries and waiting documents expire with the restore duration, when the blob is back in cold storage.
+ *
+ * @since 2021.4
+ */
+public class RetrievalLedger {
+
+    protected static final String PREFIX = "retrieval:";
+
+    protected static final int MAX_ATTEMPTS = 10;
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+
+    protected final KeyValueStoreProvider store;
+
+    protected final LongSupplier clock;
+
+    public RetrievalLedger(KeyValueStore store) {
+        this(store, System::currentTimeMillis);
+    }
+
+    protected RetrievalLedger(KeyValueStore store, LongSupplier clock) {
+        this.store = (KeyValueStoreProvider) store;
+        this.clock = clock;
+    }
+
+    /**
+     * Records a request of the restore of the given blob for the given document and user.
+     *
+     * @param ttl the duration after which the entry expires, typically the restore duration
+     * @return the entry of the restore already requested, which the document and user joined, or {@code null} if this
+     *         request is the first one and the restore has to be requested
+     */
+    public Entry request(String key, RetrievalTier tier, String document, String username, Duration ttl) {
+        long ttlSeconds = Math.max(1, ttl.getSeconds());
+        store.put(getWaitingKey(key, document), username, ttlSeconds);
+        String storeKey = PREFIX + key;
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            Entry previous = read(store.getString(storeKey));
+            if (previous != null) {
+                return previous;
+            }
+            Entry entry = new Entry();
+            entry.tier = tier.name();
+            entry.requestedAt = clock.getAsLong();
+            entry.expiresAt = entry.requestedAt + ttl.toMillis();
+            if (store.compareAndSet(storeKey, null, write(entry), ttlSeconds)) {
+                return null;
+            }
+        }
+        throw new NuxeoException(String.format("Unable to update the retrieval ledger of blob: %s", key));
+    }
+
+    /**
+     * Marks the restore of the given blob as completed.
+     *
+     * @return the completed entry with the documents of the given repository still waiting for the blob, which are
+     *         removed from the ledger as they are resolved by the caller, or {@code null} if there is no entry for the
+     *         blob
+     */
+    public Entry complete(String key, String repository) {
+        Entry[] completed = new Entry[1];
+        update(key, entry -> {
+            if (entry == null) {
+                return null;
+            }
+            completed[0] = entry;
+            if (entry.completedAt != 0) {
+                // already completed, nothing to write
+                return null;
+            }
+            entry.completedAt = clock.getAsLong();
+            return entry;
+        });
+        if (completed[0] == null) {
+            return null;
+        }
+        String prefix = getWaitingKey(key, Entry.document(repository, ""));
+        List<String> waitingKeys;
+        try (Stream<String> keys = store.keyStream(prefix)) {
+            waitingKeys = keys.collect(Collectors.toList());
+        }
+        String documentPrefix = getWaitingKey(key, "");
+        for (String waitingKey : waitingKeys) {
+            store.put(waitingKey, (String) null);
+            completed[0].documents.add(waitingKey.substring(documentPrefix.length()));
+        }
+        return completed[0];
+    }
+
+    /**
+     * Returns the entry of the given blob, without its waiting documents, or {@code null} if there is none.
+     */
+    public Entry get(String key) {
+        return read(store.getString(PREFIX + key));
+    }
+
+    /**
+     * Returns the documents waiting for the restore of the given blob, as {@code repository/id}, mapped to the user
+     * who requested it.
+     */
+    public Map<String, String> getWaitingDocuments(String key) {
+        String prefix = getWaitingKey(key, "");
+        List<String> waitingKeys;
+        try (Stream<String> keys = store.keyStream(prefix)) {
+            waitingKeys = keys.collect(Collectors.toList());
+        }
+        Map<String, String> documents = new LinkedHashMap<>();
+        // documents expired meanwhile are missing from the values
+        store.getStrings(waitingKeys)
+             .forEach((waitingKey, username) -> documents.put(waitingKey.substring(prefix.length()), username));
+        return documents;
+    }
+
+    /**
+     * Removes the entry of the given blob, along with its waiting documents.
+     */
+    public void remove(String key) {
+        store.put(PREFIX + key, (String) null);
+        try (Stream<String> keys = store.keyStream(getWaitingKey(key, ""))) {
+            keys.collect(Collectors.toList()).forEach(waitingKey -> store.put(waitingKey, (String) null));
+        }
+    }
+
+    /**
+     * Applies the given update to the entry of the given blob, retrying on concurrent updates, the update returning
+     * {@code null} when there is nothing to write.
+     */
+    protected void update(String key, UnaryOperator<Entry> updater) {
+        String storeKey = PREFIX + key;
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            String current = store.getString(storeKey);
+            Entry entry = updater.apply(read(current));
+            if (entry == null) {
+                return;
+            }
+            long ttlSeconds = Math.max(1, (entry.expiresAt - clock.getAsLong()) / 1000);
+            if (store.compareAndSet(storeKey, current, write(entry), ttlSeconds)) {
+                return;
+            }
+        }
+        throw new NuxeoException(String.format("Unable to update the retrieval ledger of blob: %s", key));
+    }
+
+    protected static String getWaitingKey(String key, String document) {
+        return PREFIX + key + ':' + document;
+    }
+
+    protected static Entry read(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(value, Entry.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected static String write(Entry entry) {
+        try {
+            return MAPPER.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The restore of a blob.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+
+        /** The retrieval tier of the restore. */
+        public String tier;
+
+        /** The time the restore was requested, in milliseconds. */
+        public long requestedAt;
+
+        /** The time the restore was found completed, in milliseconds, {@code 0} if not completed. */
+        public long completedAt;
+
+        /** The time the entry expires, in milliseconds. */
+        public long expiresAt;
+
+        /** The documents resolved by the completion of the restore, as {@code repository/id}. */
+        @JsonIgnore
+        public Set<String> documents = new LinkedHashSet<>();
+
+        @JsonIgnore
+        public RetrievalTier getRetrievalTier() {
+            return tier == null ? RetrievalTier.STANDARD : RetrievalTier.valueOf(tier);
+        }
+
+        @JsonIgnore
+        public boolean isCompleted() {
+            return completedAt != 0;
+        }
+
+        public static String document(String repository, String id) {
+            return repository + '/' + id;
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
+import java.util.Locale;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Retrieval tiers of the cold storage, trading the latency of a restore for its cost.
+ *
+ * @since 2021.4
+ */
+public enum RetrievalTier {
+
+    /** Restored within minutes, at a premium cost and for blobs up to 250 MB on Amazon S3. */
+    EXPEDITED(1d / 36),
+
+    /** Restored within hours, the default tier of the blob providers. */
+    STANDARD(1d),
+
+    /** Restored within half a day, at the lowest cost. */
+    BULK(4d);
+
+    protected final double latencyFactor;
+
+    RetrievalTier(double latencyFactor) {
+        this.latencyFactor = latencyFactor;
+    }
+
+    /**
+     * Returns the latency of this tier relative to the {@link #STANDARD} one, used to scale the delays between the
+     * availability checks.
+     */
+    public double getLatencyFactor() {
+        return latencyFactor;
+    }
+
+    /**
+     * Returns the tier of the given name, case-insensitive, or {@code null} if the name is blank.
+     *
+     * @throws NuxeoException with status 400 if there is no such tier
+     */
+    public static RetrievalTier parse(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new NuxeoException(String.format("Unknown retrieval tier: %s", name), SC_BAD_REQUEST);
+        }
+    }
+
+}
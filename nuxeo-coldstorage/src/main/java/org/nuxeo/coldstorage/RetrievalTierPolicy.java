@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+/**
+ * Chooses the retrieval tier of a cold storage content when the caller didn't request one, depending on its size and
+ * on whether a user is waiting for it.
+ * <p>
+ * An interactive retrieval of a content up to the expedited maximum size uses the {@link RetrievalTier#EXPEDITED}
+ * tier, other interactive retrievals use the interactive tier, retrievals requested in bulk use the bulk tier.
+ *
+ * @since 2021.4
+ */
+public class RetrievalTierPolicy {
+
+    protected final RetrievalTier interactiveTier;
+
+    protected final RetrievalTier bulkTier;
+
+    protected final long expeditedMaxSize;
+
+    /**
+     * @param expeditedMaxSize the maximum size in bytes of a content retrieved interactively with the
+     *            {@link RetrievalTier#EXPEDITED} tier, {@code 0} to disable it
+     */
+    public RetrievalTierPolicy(RetrievalTier interactiveTier, RetrievalTier bulkTier, long expeditedMaxSize) {
+        this.interactiveTier = interactiveTier;
+        this.bulkTier = bulkTier;
+        this.expeditedMaxSize = expeditedMaxSize;
+    }
+
+    /**
+     * Returns the tier to use for retrieving a content.
+     *
+     * @param length the length of the content, or {@code -1} if unknown
+     * @param interactive whether a user is waiting for the content, or the retrieval was requested in bulk
+     */
+    public RetrievalTier choose(long length, boolean interactive) {
+        if (!interactive) {
+            return bulkTier;
+        }
+        if (expeditedMaxSize > 0 && length >= 0 && length <= expeditedMaxSize) {
+            return RetrievalTier.EXPEDITED;
+        }
+        return interactiveTier;
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.BlobUpdateContext;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+
+/**
+ * A {@link BlobProvider} able to restore a blob from cold storage with a given {@link RetrievalTier}.
+ * <p>
+ * {@link BlobUpdateContext} has no notion of tier, the blobs of the providers not implementing this interface are
+ * restored with their default tier.
+ *
+ * @since 2021.4
+ */
+public interface TieredRestoreBlobProvider {
+
+    /**
+     * Requests the restore of the given blob from cold storage, for the given duration and with the given tier.
+     */
+    void restoreForDuration(ManagedBlob blob, Duration duration, RetrievalTier tier) throws IOException;
+
+}
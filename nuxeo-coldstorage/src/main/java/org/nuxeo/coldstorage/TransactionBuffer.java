@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Per-transaction buffer of changes, flushed once the transaction commits and dropped if it rolls back.
+ * <p>
+ * The buffer of a thread is only kept while a synchronization is registered with its transaction, which removes it on
+ * completion. The changes made in a transaction marked rollback-only are dropped right away.
+ *
+ * @param <B> the type of the buffer
+ * @since 2021.4
+ */
+public class TransactionBuffer<B> {
+
+    private static final Logger log = LogManager.getLogger(TransactionBuffer.class);
+
+    protected final ThreadLocal<B> buffers = new ThreadLocal<>();
+
+    protected final Supplier<B> factory;
+
+    protected final Consumer<B> flusher;
+
+    /**
+     * @param factory the factory of the buffer of a transaction
+     * @param flusher the consumer of the buffer of a committed transaction
+     */
+    public TransactionBuffer(Supplier<B> factory, Consumer<B> flusher) {
+        this.factory = factory;
+        this.flusher = flusher;
+    }
+
+    /**
+     * Adds a change to the buffer of the current transaction with the given adder, unless the transaction is marked
+     * rollback-only.
+     *
+     * @return {@code false} if there is no transaction, the caller applying the change right away
+     */
+    public boolean add(Consumer<B> adder) {
+        if (TransactionHelper.isTransactionMarkedRollback()) {
+            log.debug("Transaction marked rollback-only, dropping the change");
+            return true;
+        }
+        if (!TransactionHelper.isTransactionActive()) {
+            return false;
+        }
+        B buffer = buffers.get();
+        if (buffer == null) {
+            B created = factory.get();
+            try {
+                TransactionHelper.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                        // nothing to do
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        buffers.remove();
+                        if (status == Status.STATUS_COMMITTED) {
+                            flusher.accept(created);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.warn("Unable to register the transaction synchronization, dropping the change", e);
+                return true;
+            }
+            // only kept once it is sure to be removed on completion
+            buffers.set(created);
+            buffer = created;
+        }
+        adder.accept(buffer);
+        return true;
+    }
+
+    /**
+     * Returns the buffer of the current transaction, or {@code null} if nothing was added during it.
+     */
+    public B get() {
+        return buffers.get();
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.action;
+
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BULK_SAVE_BATCH_SIZE_PROPERTY_NAME;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import org.nuxeo.coldstorage.ColdStorageMetrics;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Saves the documents modified by a bulk computation in batches, once the documents of a batch are all modified.
+ * <p>
+ * The documents of a batch are saved one by one, {@link CoreSession#saveDocuments} being a loop of
+ * {@link CoreSession#saveDocument} which would not tell which documents were saved before a failure: a failing
+ * document doesn't prevent the other ones from being saved, and each document is saved once. Batching only groups the
+ * save calls, it doesn't reduce the number of repository writes. The number of documents saved by each batch is
+ * recorded by action.
+ *
+ * @since 2021.4
+ */
+public class BatchedDocumentSaver implements AutoCloseable {
+
+    protected final CoreSession session;
+
+    protected final String action;
+
+    protected final int batchSize;
+
+    protected final BiConsumer<DocumentModel, NuxeoException> onError;
+
+    protected final List<DocumentModel> pending = new ArrayList<>();
+
+    protected final Set<String> failedIds = new HashSet<>();
+
+    /**
+     * Creates a saver of batches of the size configured by
+     * {@value org.nuxeo.coldstorage.ColdStorageConstants#COLD_STORAGE_BULK_SAVE_BATCH_SIZE_PROPERTY_NAME}.
+     *
+     * @param action the bulk action on behalf of which the documents are saved
+     * @param onError the consumer of the documents which could not be saved, along with the error
+     */
+    public BatchedDocumentSaver(CoreSession session, String action,
+            BiConsumer<DocumentModel, NuxeoException> onError) {
+        this(session, action,
+                Integer.parseInt(Framework.getProperty(COLD_STORAGE_BULK_SAVE_BATCH_SIZE_PROPERTY_NAME, "20")),
+                onError);
+    }
+
+    /**
+     * @param action the bulk action on behalf of which the documents are saved
+     * @param batchSize the maximum number of documents of a batch
+     * @param onError the consumer of the documents which could not be saved, along with the error
+     */
+    public BatchedDocumentSaver(CoreSession session, String action, int batchSize,
+            BiConsumer<DocumentModel, NuxeoException> onError) {
+        this.session = session;
+        this.action = action;
+        this.batchSize = Math.max(1, batchSize);
+        this.onError = onError;
+    }
+
+    /**
+     * Adds the given document to the next batch, saving the batch if it is full.
+     */
+    public void add(DocumentModel doc) {
+        pending.add(doc);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Saves the pending documents.
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int saved = 0;
+        for (DocumentModel doc : pending) {
+            try {
+                session.saveDocument(doc);
+                saved++;
+            } catch (NuxeoException e) {
+                failedIds.add(doc.getId());
+                onError.accept(doc, e);
+            }
+        }
+        pending.clear();
+        ColdStorageMetrics.updateSavedDocumentsHistogram(action, saved);
+    }
+
+    /**
+     * Returns whether the given document could not be saved.
+     */
+    public boolean isFailed(String id) {
+        return failedIds.contains(id);
+    }
+
+    /**
+     * Saves the pending documents.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.action;
+
+import static org.nuxeo.coldstorage.ColdStorageConstants.FILE_CONTENT_PROPERTY;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.ColdStorageConstants;
+import org.nuxeo.coldstorage.service.ColdStorageService;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+
+/**
+ * Bulk action in charge of checking whether the main blob of documents just created or modified is already in cold
+ * storage, once their transaction is committed.
+ * <p>
+ * The documents of a batch are grouped by main blob so that the cold storage is probed once per blob.
+ *
+ * @since 2021.4
+ */
+public class CheckAlreadyInColdStorageAction implements StreamProcessorTopology {
+
+    private static final Logger log = LogManager.getLogger(CheckAlreadyInColdStorageAction.class);
+
+    public static final String ACTION_NAME = "checkAlreadyInColdStorage";
+
+    public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(CheckAlreadyInColdStorageComputation::new, //
+                               List.of(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
+                       .build();
+    }
+
+    public static class CheckAlreadyInColdStorageComputation extends AbstractBulkComputation {
+
+        public CheckAlreadyInColdStorageComputation() {
+            super(ACTION_FULL_NAME);
+        }
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+            log.debug("Start computing documents to check already in cold storage {}", ids);
+            Map<String, List<DocumentModel>> documentsByBlob = new LinkedHashMap<>();
+            for (DocumentModel document : loadDocuments(session, ids)) {
+                // the document may have changed since it was scheduled
+                if (document.isProxy() || document.hasFacet(ColdStorageConstants.COLD_STORAGE_FACET_NAME)
+                        || !document.hasSchema("file")) {
+                    continue;
+                }
+                Serializable blob = document.getPropertyValue(FILE_CONTENT_PROPERTY);
+                if (blob instanceof ManagedBlob) {
+                    documentsByBlob.computeIfAbsent(((ManagedBlob) blob).getKey(), k -> new ArrayList<>())
+                                   .add(document);
+                }
+            }
+            ColdStorageService service = Framework.getService(ColdStorageService.class);
+            long errorCount = 0;
+            for (Entry<String, List<DocumentModel>> entry : documentsByBlob.entrySet()) {
+                try {
+                    service.checkAlreadyInColdStorage(session, entry.getValue());
+                } catch (NuxeoException e) {
+                    errorCount += entry.getValue().size();
+                    delta.inError(String.format("Cannot check already in cold storage for blob %s: %s",
+                            entry.getKey(), e.getMessage()));
+                    log.warn("Could not check already in cold storage for blob: {}", entry::getKey, () -> e);
+                }
+            }
+            delta.setErrorCount(errorCount);
+            log.debug("End computing documents to check already in cold storage");
+        }
+    }
+
+}
@@ -19,20 +19,44 @@
 
 package org.nuxeo.coldstorage.action;
 
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BEING_RETRIEVED_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_RETRIEVAL_TIER_PROPERTY;
 import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
 import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
 import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.AvailabilityCheckSchedule;
+import org.nuxeo.coldstorage.ColdStorageHelper;
+import org.nuxeo.coldstorage.RetrievalTier;
 import org.nuxeo.coldstorage.service.ColdStorageService;
 import org.nuxeo.ecm.core.api.CoreSession;
-import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobStatus;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.blob.SimpleManagedBlob;
 import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.lib.stream.computation.Topology;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.stream.StreamProcessorTopology;
@@ -48,29 +72,225 @@ public class CheckColdStorageAvailabilityAction implements StreamProcessorTopolo
 
     public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
 
+    /**
+     * Stream processor option defining the number of blob statuses probed concurrently for a batch of documents.
+     *
+     * @since 2021.4
+     */
+    public static final String PROBE_CONCURRENCY_OPTION = "probeConcurrency";
+
+    public static final int DEFAULT_PROBE_CONCURRENCY = 8;
+
     @Override
     public Topology getTopology(Map<String, String> options) {
+        int probeConcurrency = Integer.parseInt(
+                options.getOrDefault(PROBE_CONCURRENCY_OPTION, String.valueOf(DEFAULT_PROBE_CONCURRENCY)));
         return Topology.builder()
-                       .addComputation(CheckColdStorageAvailabilityComputation::new, //
+                       .addComputation(() -> new CheckColdStorageAvailabilityComputation(probeConcurrency), //
                                List.of(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
                        .build();
     }
 
     public static class CheckColdStorageAvailabilityComputation extends AbstractBulkComputation {
 
+        protected static final String BLOB_KEY = COLD_STORAGE_CONTENT_PROPERTY + "/data";
+
+        protected static final String BLOB_DIGEST = COLD_STORAGE_CONTENT_PROPERTY + "/digest";
+
+        protected final ExecutorService probeExecutor;
+
         public CheckColdStorageAvailabilityComputation() {
+            this(DEFAULT_PROBE_CONCURRENCY);
+        }
+
+        /**
+         * @since 2021.4
+         */
+        public CheckColdStorageAvailabilityComputation(int probeConcurrency) {
             super(ACTION_FULL_NAME);
+            probeExecutor = probeConcurrency > 1 ? Executors.newFixedThreadPool(probeConcurrency,
+                    new BasicThreadFactory.Builder().namingPattern("coldstorage-probe-%d").daemon(true).build())
+                    : null;
         }
 
         @Override
         protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
             log.debug("Start computing documents to checked {}", ids);
-            DocumentModelList documents = loadDocuments(session, ids);
-
             ColdStorageService service = Framework.getService(ColdStorageService.class);
-            documents.forEach((doc) -> service.checkIsRetrieved(session, doc));
+            AvailabilityCheckSchedule schedule = service.getAvailabilityCheckSchedule();
+            List<CheckedDocument> dueDocuments = new ArrayList<>();
+            for (CheckedDocument doc : loadCheckedDocuments(session, ids)) {
+                if (schedule.isDue(doc.id)) {
+                    dueDocuments.add(doc);
+                } else {
+                    log.trace("Document {} is not due for an availability check", doc.id);
+                }
+            }
+            Map<String, BlobStatus> statuses = probe(dueDocuments.stream()
+                                                                 .map(doc -> doc.coldContent)
+                                                                 .filter(Objects::nonNull)
+                                                                 .collect(Collectors.toList()));
+            List<CheckedDocument> changedDocuments = new ArrayList<>();
+            for (CheckedDocument doc : dueDocuments) {
+                doc.status = doc.coldContent == null ? null : statuses.get(doc.coldContent.getKey());
+                if (doc.isPending()) {
+                    // nothing to save, the full document is not needed
+                    if (doc.beingRetrieved) {
+                        schedule.scheduleNextCheck(doc.id, doc.tier);
+                    }
+                } else {
+                    changedDocuments.add(doc);
+                }
+            }
+            if (!changedDocuments.isEmpty()) {
+                List<String> changedIds = changedDocuments.stream().map(doc -> doc.id).collect(Collectors.toList());
+                Map<String, DocumentModel> documents = new HashMap<>();
+                loadDocuments(session, changedIds).forEach(doc -> documents.put(doc.getId(), doc));
+                // documents are updated and events fired from the session thread only
+                for (CheckedDocument checked : changedDocuments) {
+                    DocumentModel doc = documents.get(checked.id);
+                    if (doc != null && !service.checkIsRetrieved(session, doc, checked.status)
+                            && Boolean.TRUE.equals(doc.getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY))) {
+                        // still being retrieved, check it later
+                        schedule.scheduleNextCheck(doc.getId(), ColdStorageHelper.getRetrievalTier(doc));
+                    }
+                }
+            }
             log.debug("End computing documents to checked");
         }
+
+        /**
+         * Loads the given documents, fetching only the properties needed to check the availability of their cold
+         * storage content in a single query. The full documents are loaded only if their cold storage content cannot
+         * be resolved from its key.
+         *
+         * @since 2021.4
+         */
+        protected List<CheckedDocument> loadCheckedDocuments(CoreSession session, List<String> ids) {
+            String query = String.format("SELECT %s, %s, %s, %s, %s FROM Document, Relation WHERE %s IN (%s)",
+                    NXQL.ECM_UUID, COLD_STORAGE_BEING_RETRIEVED_PROPERTY, COLD_STORAGE_RETRIEVAL_TIER_PROPERTY,
+                    BLOB_KEY, BLOB_DIGEST, NXQL.ECM_UUID,
+                    ids.stream().map(NXQL::escapeString).collect(Collectors.joining(", ")));
+            List<CheckedDocument> checkedDocuments = new ArrayList<>();
+            Map<String, CheckedDocument> unresolved = new HashMap<>();
+            for (Map<String, Serializable> row : session.queryProjection(query, 0, 0)) {
+                CheckedDocument doc = new CheckedDocument(session.getRepositoryName(), row);
+                checkedDocuments.add(doc);
+                if (doc.coldContent == null && row.get(BLOB_KEY) != null) {
+                    unresolved.put(doc.id, doc);
+                }
+            }
+            if (!unresolved.isEmpty()) {
+                loadDocuments(session, new ArrayList<>(unresolved.keySet())).forEach(
+                        doc -> unresolved.get(doc.getId()).coldContent = getColdContent(doc));
+            }
+            return checkedDocuments;
+        }
+
+        /**
+         * Fetches the statuses of the given cold storage contents, once per blob, concurrently if enabled.
+         *
+         * @return the statuses by blob key
+         * @since 2021.4
+         */
+        protected Map<String, BlobStatus> probe(List<ManagedBlob> coldContents) {
+            Map<String, ManagedBlob> blobs = new LinkedHashMap<>();
+            coldContents.forEach(blob -> blobs.putIfAbsent(blob.getKey(), blob));
+            Map<String, BlobStatus> statuses = new HashMap<>();
+            if (probeExecutor == null || blobs.size() <= 1) {
+                blobs.forEach((key, blob) -> statuses.put(key, ColdStorageHelper.getStatus(blob)));
+                return statuses;
+            }
+            Map<String, Future<BlobStatus>> futures = new LinkedHashMap<>();
+            blobs.forEach(
+                    (key, blob) -> futures.put(key, probeExecutor.submit(() -> ColdStorageHelper.getStatus(blob))));
+            for (Entry<String, Future<BlobStatus>> entry : futures.entrySet()) {
+                try {
+                    statuses.put(entry.getKey(), entry.getValue().get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new NuxeoException(e);
+                } catch (ExecutionException e) {
+                    log.error("Unable to get blob status for blob: {}", entry.getKey(), e.getCause());
+                }
+            }
+            return statuses;
+        }
+
+        protected static ManagedBlob getColdContent(DocumentModel doc) {
+            Serializable coldContent = doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+            return coldContent instanceof ManagedBlob ? (ManagedBlob) coldContent : null;
+        }
+
+        /**
+         * Returns the cold storage content of the given key, or {@code null} if its blob provider cannot be resolved
+         * from the key.
+         *
+         * @since 2021.4
+         */
+        protected static ManagedBlob getColdContent(String repository, Serializable key, Serializable digest) {
+            if (key == null) {
+                return null;
+            }
+            BlobInfo blobInfo = new BlobInfo();
+            blobInfo.key = key.toString();
+            blobInfo.digest = digest == null ? null : digest.toString();
+            // keys of blobs not stored by the default blob provider of the repository are prefixed by their provider
+            int colon = blobInfo.key.indexOf(':');
+            String providerId = colon < 0 ? repository : blobInfo.key.substring(0, colon);
+            if (Framework.getService(BlobManager.class).getBlobProvider(providerId) == null) {
+                return null;
+            }
+            return new SimpleManagedBlob(providerId, blobInfo);
+        }
+
+        @Override
+        public void destroy() {
+            if (probeExecutor != null) {
+                probeExecutor.shutdownNow();
+            }
+            super.destroy();
+        }
+
+        /**
+         * The properties of a document needed to check the availability of its cold storage content.
+         *
+         * @since 2021.4
+         */
+        protected static class CheckedDocument {
+
+            protected final String id;
+
+            protected final boolean beingRetrieved;
+
+            protected final RetrievalTier tier;
+
+            protected ManagedBlob coldContent;
+
+            protected BlobStatus status;
+
+            protected CheckedDocument(String repository, Map<String, Serializable> row) {
+                id = (String) row.get(NXQL.ECM_UUID);
+                beingRetrieved = Boolean.TRUE.equals(row.get(COLD_STORAGE_BEING_RETRIEVED_PROPERTY));
+                RetrievalTier retrievalTier = null;
+                try {
+                    retrievalTier = RetrievalTier.parse((String) row.get(COLD_STORAGE_RETRIEVAL_TIER_PROPERTY));
+                } catch (NuxeoException e) {
+                    log.warn("Invalid retrieval tier on document: {}", id, e);
+                }
+                tier = retrievalTier == null ? RetrievalTier.STANDARD : retrievalTier;
+                coldContent = getColdContent(repository, row.get(BLOB_KEY), row.get(BLOB_DIGEST));
+            }
+
+            /**
+             * Returns whether checking the document would not change it, its cold storage content being unknown or
+             * still being restored.
+             */
+            protected boolean isPending() {
+                return coldContent == null || status == null
+                        || !status.isDownloadable() && status.isOngoingRestore();
+            }
+        }
     }
 
 }
@@ -19,28 +19,38 @@
 
 package org.nuxeo.coldstorage.action;
 
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CLASS_UPDATED_CONTEXT_DATA;
+import static org.nuxeo.coldstorage.ColdStorageConstants.FILE_CONTENT_PROPERTY;
 import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
 import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
 import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.coldstorage.service.ColdStorageService;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
-import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.lib.stream.computation.Topology;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.stream.StreamProcessorTopology;
 
 /**
  * Bulk move documents to Cold Storage.
+ * <p>
+ * Documents of a batch sharing the same main blob are moved together: the storage class of the blob is updated once and
+ * a single propagation is submitted for the other documents referencing it.
  */
 public class MoveToColdStorageContentAction implements StreamProcessorTopology {
 
@@ -60,6 +70,12 @@ public class MoveToColdStorageContentAction implements StreamProcessorTopology {
 
     public static class MoveToColdStorageContentComputation extends AbstractBulkComputation {
 
+        protected static final String BLOB_KEY = FILE_CONTENT_PROPERTY + "/data";
+
+        protected static final String BLOB_DIGEST = FILE_CONTENT_PROPERTY + "/digest";
+
+        protected long errorCount;
+
         public MoveToColdStorageContentComputation() {
             super(ACTION_FULL_NAME);
         }
@@ -67,25 +83,68 @@ public class MoveToColdStorageContentAction implements StreamProcessorTopology {
         @Override
         protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
             log.debug("Start computing documents to be sent to ColdStorage {}", ids);
-            DocumentModelList documents = loadDocuments(session, ids);
-
             ColdStorageService service = Framework.getService(ColdStorageService.class);
 
-            long errorCount = 0;
-            for (DocumentModel document : documents) {
-                try {
-                    service.moveToColdStorage(session, document.getRef());
-                } catch (NuxeoException e) {
-                    errorCount++;
-                    var message = String.format("Cannot move document %s to cold storage: %s", document.getId(),
-                            e.getMessage());
-                    delta.inError(message);
-                    log.warn(message, e);
+            errorCount = 0;
+            Map<String, String> movedDigests = new LinkedHashMap<>();
+            try (BatchedDocumentSaver saver = new BatchedDocumentSaver(session, ACTION_NAME,
+                    (document, e) -> onError(document.getId(), e))) {
+                for (List<Map<String, Serializable>> sameBlobDocuments : groupByBlob(session, ids)) {
+                    // only the first document of which move updated the storage class of the shared blob needs to,
+                    // the documents already in cold storage or waiting for their placeholder rendition don't
+                    boolean updateStorageClass = true;
+                    for (Map<String, Serializable> document : sameBlobDocuments) {
+                        String id = (String) document.get(NXQL.ECM_UUID);
+                        try {
+                            DocumentModel documentModel = service.proceedMoveToColdStorage(session, new IdRef(id),
+                                    updateStorageClass);
+                            saver.add(documentModel);
+                            if (Boolean.TRUE.equals(
+                                    documentModel.getContextData(COLD_STORAGE_CLASS_UPDATED_CONTEXT_DATA))) {
+                                updateStorageClass = false;
+                            }
+                            movedDigests.put(id, (String) document.get(BLOB_DIGEST));
+                        } catch (NuxeoException e) {
+                            onError(id, e);
+                        }
+                    }
                 }
+                saver.flush();
+                // Submit Bulk action to update other documents referencing the same blobs
+                movedDigests.entrySet()
+                            .stream()
+                            .filter(moved -> !saver.isFailed(moved.getKey()) && moved.getValue() != null)
+                            .map(Map.Entry::getValue)
+                            .distinct()
+                            .forEach(blobDigest -> service.propagateMoveToColdStorage(session, blobDigest));
             }
             delta.setErrorCount(errorCount);
             log.debug("End computing documents to be sent to ColdStorage");
         }
+
+        protected void onError(String id, NuxeoException e) {
+            errorCount++;
+            var message = String.format("Cannot move document %s to cold storage: %s", id, e.getMessage());
+            delta.inError(message);
+            log.warn(message, e);
+        }
+
+        /**
+         * Groups the given documents by main blob, fetching only their identifier and main blob key and digest.
+         * Documents without main blob are put in their own group.
+         */
+        protected Collection<List<Map<String, Serializable>>> groupByBlob(CoreSession session, List<String> ids) {
+            String query = String.format("SELECT %s, %s, %s FROM Document WHERE %s IN (%s)", NXQL.ECM_UUID, BLOB_KEY,
+                    BLOB_DIGEST, NXQL.ECM_UUID,
+                    ids.stream().map(NXQL::escapeString).collect(Collectors.joining(", ")));
+            Map<String, List<Map<String, Serializable>>> groups = new LinkedHashMap<>();
+            for (Map<String, Serializable> document : session.queryProjection(query, 0, 0)) {
+                Serializable key = document.get(BLOB_KEY);
+                String groupKey = key == null ? document.get(NXQL.ECM_UUID).toString() : key.toString();
+                groups.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(document);
+            }
+            return groups.values();
+        }
     }
 
 }
@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.action;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.service.ColdStorageService;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Stream processor in charge of the second phase of the move to cold storage of a document, when the placeholder
+ * rendition is computed asynchronously.
+ * <p>
+ * A record of the {@value #STREAM_NAME} stream is keyed by document id and holds {@code repository/id}, it is appended
+ * once the transaction which moved the document with a temporary placeholder is committed, see
+ * {@link ColdStorageService#computePlaceholderRendition}. The records failing, e.g. because the rendition cannot be
+ * computed yet, are retried according to the policy of the stream processor. The documents still waiting for their
+ * rendition afterwards are appended again by a scheduled job, see
+ * {@link ColdStorageService#retryPlaceholderRenditions}.
+ *
+ * @since 2021.4
+ */
+public class PlaceholderRenditionAction implements StreamProcessorTopology {
+
+    private static final Logger log = LogManager.getLogger(PlaceholderRenditionAction.class);
+
+    public static final String COMPUTATION_NAME = "coldStoragePlaceholderRendition";
+
+    public static final String STREAM_NAME = "coldstorage/placeholderRendition";
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(PlaceholderRenditionComputation::new, //
+                               List.of(INPUT_1 + ":" + STREAM_NAME))
+                       .build();
+    }
+
+    /**
+     * Returns the data of the record of the given document.
+     */
+    public static byte[] toData(String repository, String docId) {
+        return (repository + '/' + docId).getBytes(UTF_8);
+    }
+
+    public static class PlaceholderRenditionComputation extends AbstractComputation {
+
+        public PlaceholderRenditionComputation() {
+            super(COMPUTATION_NAME, 1, 0);
+        }
+
+        @Override
+        public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+            String value = new String(record.getData(), UTF_8);
+            int slash = value.indexOf('/');
+            if (slash <= 0) {
+                log.warn("Invalid placeholder rendition record: {}", value);
+            } else {
+                String repository = value.substring(0, slash);
+                String docId = value.substring(slash + 1);
+                log.debug("Computing the placeholder rendition of document: {}", docId);
+                ColdStorageService service = Framework.getService(ColdStorageService.class);
+                TransactionHelper.runInTransaction(() -> service.computePlaceholderRendition(
+                        CoreInstance.getCoreSessionSystem(repository), docId));
+            }
+            context.askForCheckpoint();
+        }
+    }
+
+}
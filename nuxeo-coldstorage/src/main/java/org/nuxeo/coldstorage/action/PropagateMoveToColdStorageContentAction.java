@@ -29,10 +29,8 @@ import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.nuxeo.coldstorage.ColdStorageConstants;
 import org.nuxeo.coldstorage.service.ColdStorageService;
 import org.nuxeo.ecm.core.api.CoreSession;
-import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
@@ -64,6 +62,8 @@ public class PropagateMoveToColdStorageContentAction implements StreamProcessorT
 
     public static class PropagateMoveToColdStorageContentComputation extends AbstractBulkComputation {
 
+        protected long errorCount;
+
         public PropagateMoveToColdStorageContentComputation() {
             super(ACTION_FULL_NAME);
         }
@@ -75,28 +75,21 @@ public class PropagateMoveToColdStorageContentAction implements StreamProcessorT
 
             ColdStorageService service = Framework.getService(ColdStorageService.class);
 
-            long errorCount = 0;
-            for (DocumentModel document : documents) {
-                if (document.hasFacet(ColdStorageConstants.COLD_STORAGE_FACET_NAME)) {
-                    log.info("The main content is already in cold storage for document: {}", document::getId);
-                    continue;
-                }
-                try {
-                    DocumentModel documentModel = service.proceedMoveToColdStorage(session, document.getRef());
-                    if (documentModel.isVersion()) {
-                        documentModel.putContextData(CoreSession.ALLOW_VERSION_WRITE, true);
-                    }
-                    session.saveDocument(documentModel);
-                } catch (NuxeoException e) {
-                    errorCount++;
-                    delta.inError(String.format("Cannot propagate move to cold storage for document %s: %s", document.getId(),
-                            e.getMessage()));
-                    log.warn("Could not propagate move to cold storage for document: {}", document::getId, () -> e);
-                }
-            }
+            errorCount = 0;
+            // the documents are updated as loaded and saved in batches, notified by a single event
+            int moved = service.applyPropagatedMove(session, documents,
+                    (document, e) -> onError(document.getId(), e));
+            log.debug("Moved {} documents out of {}", moved, documents.size());
             delta.setErrorCount(errorCount);
             log.debug("End computing documents of which content has been sent to ColdStorage");
         }
+
+        protected void onError(String id, NuxeoException e) {
+            errorCount++;
+            delta.inError(String.format("Cannot propagate move to cold storage for document %s: %s", id,
+                    e.getMessage()));
+            log.warn("Could not propagate move to cold storage for document: {}", id, e);
+        }
     }
 
 }
@@ -0,0 +1,161 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.action;
+
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BEING_RETRIEVED_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPERTY;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.RetrievalTier;
+import org.nuxeo.coldstorage.RetrievalTierPolicy;
+import org.nuxeo.coldstorage.service.ColdStorageService;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+
+/**
+ * Bulk request the retrieval of the cold storage content of documents.
+ * <p>
+ * The restore of a blob is requested once, whatever the number of documents referencing it: documents of a batch
+ * sharing the same cold storage content are retrieved together, and the service doesn't request again the restore of a
+ * blob already requested by another batch or command.
+ *
+ * @since 2021.4
+ */
+public class RequestRetrievalFromColdStorageAction implements StreamProcessorTopology {
+
+    private static final Logger log = LogManager.getLogger(RequestRetrievalFromColdStorageAction.class);
+
+    public static final String ACTION_NAME = "requestRetrievalFromColdStorage";
+
+    public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
+
+    /** Optional parameter holding the number of days the retrieved contents remain available. */
+    public static final String PARAM_NUMBER_OF_DAYS_OF_AVAILABILITY = "numberOfDaysOfAvailability";
+
+    /** Optional parameter holding the retrieval tier, chosen by the configured policy if missing. */
+    public static final String PARAM_TIER = "tier";
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(RequestRetrievalFromColdStorageComputation::new, //
+                               List.of(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
+                       .build();
+    }
+
+    public static class RequestRetrievalFromColdStorageComputation extends AbstractBulkComputation {
+
+        protected static final String BLOB_KEY = COLD_STORAGE_CONTENT_PROPERTY + "/data";
+
+        protected static final String BLOB_LENGTH = COLD_STORAGE_CONTENT_PROPERTY + "/length";
+
+        public RequestRetrievalFromColdStorageComputation() {
+            super(ACTION_FULL_NAME);
+        }
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+            log.debug("Start computing documents to be retrieved from ColdStorage {}", ids);
+            ColdStorageService service = Framework.getService(ColdStorageService.class);
+            Duration duration = getDuration(service, properties.get(PARAM_NUMBER_OF_DAYS_OF_AVAILABILITY));
+            Serializable tierName = properties.get(PARAM_TIER);
+            RetrievalTier tier = tierName == null ? null : RetrievalTier.parse(tierName.toString());
+            RetrievalTierPolicy policy = service.getRetrievalTierPolicy();
+
+            long errorCount = 0;
+            for (List<Map<String, Serializable>> sameBlobDocuments : groupByColdContent(session, ids)) {
+                for (Map<String, Serializable> document : sameBlobDocuments) {
+                    String id = (String) document.get(NXQL.ECM_UUID);
+                    if (Boolean.TRUE.equals(document.get(COLD_STORAGE_BEING_RETRIEVED_PROPERTY))) {
+                        log.trace("The cold storage content of document {} is already being retrieved", id);
+                        continue;
+                    }
+                    try {
+                        RetrievalTier retrievalTier = tier != null ? tier
+                                : policy.choose(getLength(document.get(BLOB_LENGTH)), false);
+                        service.retrieveFromColdStorage(session, new IdRef(id), duration, retrievalTier);
+                    } catch (NuxeoException e) {
+                        errorCount++;
+                        var message = String.format("Cannot retrieve document %s from cold storage: %s", id,
+                                e.getMessage());
+                        delta.inError(message);
+                        log.warn(message, e);
+                    }
+                }
+            }
+            delta.setErrorCount(errorCount);
+            log.debug("End computing documents to be retrieved from ColdStorage");
+        }
+
+        /**
+         * Groups the given documents by cold storage content, fetching only their identifier, retrieval state and cold
+         * storage content key and length. Documents without cold storage content are put in their own group.
+         */
+        protected Collection<List<Map<String, Serializable>>> groupByColdContent(CoreSession session,
+                List<String> ids) {
+            String query = String.format("SELECT %s, %s, %s, %s FROM Document WHERE %s IN (%s)", NXQL.ECM_UUID,
+                    COLD_STORAGE_BEING_RETRIEVED_PROPERTY, BLOB_KEY, BLOB_LENGTH, NXQL.ECM_UUID,
+                    ids.stream().map(NXQL::escapeString).collect(Collectors.joining(", ")));
+            Map<String, List<Map<String, Serializable>>> groups = new LinkedHashMap<>();
+            for (Map<String, Serializable> document : session.queryProjection(query, 0, 0)) {
+                Serializable key = document.get(BLOB_KEY);
+                String groupKey = key == null ? document.get(NXQL.ECM_UUID).toString() : key.toString();
+                groups.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(document);
+            }
+            return groups.values();
+        }
+
+        protected static Duration getDuration(ColdStorageService service, Serializable numberOfDays) {
+            if (numberOfDays == null || numberOfDays.toString().isBlank()) {
+                return service.getAvailabilityDuration();
+            }
+            try {
+                int days = Integer.parseInt(numberOfDays.toString());
+                return days <= 0 ? service.getAvailabilityDuration() : Duration.ofDays(days);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid %s: %s", PARAM_NUMBER_OF_DAYS_OF_AVAILABILITY, numberOfDays), e);
+            }
+        }
+
+        protected static long getLength(Serializable length) {
+            return length instanceof Number ? ((Number) length).longValue() : -1;
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.action;
+
+import static org.nuxeo.coldstorage.action.RequestRetrievalFromColdStorageAction.PARAM_NUMBER_OF_DAYS_OF_AVAILABILITY;
+import static org.nuxeo.coldstorage.action.RequestRetrievalFromColdStorageAction.PARAM_TIER;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.nuxeo.coldstorage.RetrievalTier;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.bulk.AbstractBulkActionValidation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+
+/**
+ * Validates the parameters of the {@link RequestRetrievalFromColdStorageAction} bulk action.
+ *
+ * @since 2021.4
+ */
+public class RequestRetrievalFromColdStorageValidation extends AbstractBulkActionValidation {
+
+    @Override
+    protected List<String> getParametersToValidate() {
+        return List.of(PARAM_NUMBER_OF_DAYS_OF_AVAILABILITY, PARAM_TIER);
+    }
+
+    @Override
+    protected void validateCommand(BulkCommand command) throws IllegalArgumentException {
+        Serializable numberOfDays = command.getParam(PARAM_NUMBER_OF_DAYS_OF_AVAILABILITY);
+        if (numberOfDays != null) {
+            try {
+                Integer.parseInt(numberOfDays.toString());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid %s: %s", PARAM_NUMBER_OF_DAYS_OF_AVAILABILITY, numberOfDays));
+            }
+        }
+        Serializable tier = command.getParam(PARAM_TIER);
+        if (tier != null) {
+            try {
+                RetrievalTier.parse(tier.toString());
+            } catch (NuxeoException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.action;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.service.ColdStorageService;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stream processor in charge of updating the documents of which cold storage content has been restored, as soon as the
+ * restore completion is notified.
+ * <p>
+ * A record of the {@value #STREAM_NAME} stream holds either a blob key or an Amazon S3 event notification, of which the
+ * {@code ObjectRestore:Completed} records are taken into account. Any source, an S3 notification bridge or a test, can
+ * append to this stream, see {@link ColdStorageService#notifyRestoreCompleted(String)}.
+ *
+ * @since 2021.4
+ */
+public class RestoreCompletedAction implements StreamProcessorTopology {
+
+    private static final Logger log = LogManager.getLogger(RestoreCompletedAction.class);
+
+    public static final String COMPUTATION_NAME = "coldStorageRestoreCompleted";
+
+    public static final String STREAM_NAME = "coldstorage/restoreCompleted";
+
+    public static final String S3_RESTORE_COMPLETED_EVENT_PREFIX = "ObjectRestore:Completed";
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(RestoreCompletedComputation::new, //
+                               List.of(INPUT_1 + ":" + STREAM_NAME))
+                       .build();
+    }
+
+    /**
+     * Extracts the keys of the blobs of which restore is completed from the given record data.
+     *
+     * @param data a blob key, with or without its provider or bucket prefix, or an S3 event notification
+     * @return the blob keys, without their provider or bucket prefix, empty if none is found
+     */
+    public static List<String> parseKeys(byte[] data) {
+        List<String> keys = new ArrayList<>();
+        String value = data == null ? "" : new String(data, UTF_8).trim();
+        if (value.isEmpty()) {
+            return keys;
+        }
+        if (!value.startsWith("{")) {
+            keys.add(toKey(value));
+            return keys;
+        }
+        try {
+            JsonNode records = MAPPER.readTree(value).path("Records");
+            for (JsonNode record : records) {
+                if (!record.path("eventName").asText().startsWith(S3_RESTORE_COMPLETED_EVENT_PREFIX)) {
+                    continue;
+                }
+                String key = record.path("s3").path("object").path("key").asText(null);
+                if (key != null) {
+                    // object keys are URL encoded in S3 event notifications
+                    keys.add(toKey(URLDecoder.decode(key, UTF_8)));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to parse restore completed notification: {}", value, e);
+        }
+        return keys;
+    }
+
+    protected static String toKey(String key) {
+        int colon = key.indexOf(':');
+        if (colon >= 0) {
+            key = key.substring(colon + 1);
+        }
+        int slash = key.lastIndexOf('/');
+        if (slash >= 0) {
+            key = key.substring(slash + 1);
+        }
+        return key;
+    }
+
+    public static class RestoreCompletedComputation extends AbstractComputation {
+
+        public RestoreCompletedComputation() {
+            super(COMPUTATION_NAME, 1, 0);
+        }
+
+        @Override
+        public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+            List<String> keys = parseKeys(record.getData());
+            if (!keys.isEmpty()) {
+                log.debug("Restore completed for blobs: {}", keys);
+                ColdStorageService service = Framework.getService(ColdStorageService.class);
+                for (String repository : Framework.getService(RepositoryService.class).getRepositoryNames()) {
+                    TransactionHelper.runInTransaction(() -> service.checkRestoreCompleted(
+                            CoreInstance.getCoreSessionSystem(repository), keys));
+                }
+            }
+            context.askForCheckpoint();
+        }
+    }
+
+}
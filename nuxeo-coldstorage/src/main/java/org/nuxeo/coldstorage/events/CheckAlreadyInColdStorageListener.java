@@ -19,15 +19,17 @@
 
 package org.nuxeo.coldstorage.events;
 
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.FILE_CONTENT_PROPERTY;
 import static org.nuxeo.ecm.core.api.event.DocumentEventTypes.DOCUMENT_CREATED;
 import static org.nuxeo.ecm.core.api.event.DocumentEventTypes.DOCUMENT_UPDATED;
 import static org.nuxeo.ecm.platform.thumbnail.listener.UpdateThumbnailListener.THUMBNAIL_UPDATED;
 
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.coldstorage.ColdStorageConstants;
-import org.nuxeo.coldstorage.ColdStorageHelper;
 import org.nuxeo.coldstorage.service.ColdStorageService;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.CoreSession;
@@ -38,12 +40,15 @@ import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventContext;
 import org.nuxeo.ecm.core.event.EventListener;
 import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
-import org.nuxeo.ecm.platform.thumbnail.listener.ThumbnailHelper;
 import org.nuxeo.runtime.api.Framework;
 
 /**
  * Listener on documentModified and documentCreated event to check if new document references a blob already in Cold
  * Storage or if the creation/modification of the document forced a restore from Cold Storage of the blob.
+ * <p>
+ * Unless strict consistency is configured, the check is run asynchronously once the transaction is committed, so that
+ * the cold storage is not probed while creating or updating documents. The documents of which main blob is definitely
+ * not in cold storage, according to the {@link org.nuxeo.coldstorage.ColdDigestIndex}, are not checked at all.
  *
  * @since 2021.0.0
  */
@@ -53,8 +58,6 @@ public class CheckAlreadyInColdStorageListener implements EventListener {
 
     public static final String DISABLE_CHECK_ALREADY_IN_COLD_STORAGE_LISTENER = "disableCheckAlreadyInColdStorageListener";
 
-    protected ThumbnailHelper thumbnailHelper = new ThumbnailHelper();
-
     @Override
     public void handleEvent(Event event) {
         if (!(DOCUMENT_CREATED.equals(event.getName()) || DOCUMENT_UPDATED.equals(event.getName()))) {
@@ -86,24 +89,16 @@ public class CheckAlreadyInColdStorageListener implements EventListener {
         if (blob != null && blob instanceof ManagedBlob) {
             ColdStorageService service = Framework.getService(ColdStorageService.class);
             CoreSession session = docCtx.getCoreSession();
-            if (ColdStorageHelper.isInColdStorage((ManagedBlob) blob)) {
-                log.debug("Main blob: {} is already in cold storage, need to update document: {} accordingly",
-                        blob::getDigest, doc::getId);
-                // We need to make sure the thumbnail is available to use it as placeholder of the main blob
-                thumbnailHelper.createThumbnailIfNeeded(session, doc);
-                doc = service.proceedMoveToColdStorage(session, doc.getRef());
-                if (doc.isVersion()) {
-                    doc.putContextData(CoreSession.ALLOW_VERSION_WRITE, true);
-                }
-                session.saveDocument(doc);
+            if (!service.getColdDigestIndex().mightBeCold(session.getRepositoryName(), blob.getDigest())) {
+                // neither in cold storage nor referenced as cold storage content, nothing to check
+                log.trace("Main blob: {} of document: {} is not in cold storage", blob::getDigest, doc::getId);
+                return;
+            }
+            if (Framework.isBooleanPropertyTrue(COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME)) {
+                service.checkAlreadyInColdStorage(session, List.of(doc));
             } else {
-                // If the blob was already in Cold Storage state, the creation of this document has overwritten the blob
-                // and it will now have the default storage class.
-                // Let's propagate a restore to update other documents referencing this blob accordingly if needed
-                log.debug(
-                        "Main blob: {} is not in cold storage for document: {}, let's propagate a restore in case the doc creation/update restored it",
-                        blob::getDigest, doc::getId);
-                service.propagateRestoreFromColdStorage(session, blob.getDigest());
+                // don't probe the cold storage in the transaction creating or updating the document
+                service.scheduleCheckAlreadyInColdStorage(session, doc);
             }
         }
     }
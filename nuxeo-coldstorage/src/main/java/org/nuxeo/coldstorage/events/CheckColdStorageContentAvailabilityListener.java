@@ -19,10 +19,14 @@
 
 package org.nuxeo.coldstorage.events;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.ClusterLease;
+import org.nuxeo.coldstorage.ClusterMembership;
+import org.nuxeo.coldstorage.ColdStorageMetrics;
 import org.nuxeo.coldstorage.service.ColdStorageService;
 import org.nuxeo.ecm.core.api.CoreInstance;
 import org.nuxeo.ecm.core.api.CoreSession;
@@ -43,13 +47,30 @@ public class CheckColdStorageContentAvailabilityListener implements PostCommitEv
 
     @Override
     public void handleEvent(EventBundle events) {
-        log.debug("Start checking the available cold storage content");
-        List<String> repositoryNames = Framework.getService(RepositoryService.class).getRepositoryNames();
         ColdStorageService service = Framework.getService(ColdStorageService.class);
-        for (String repository : repositoryNames) {
+        // the check is scheduled on all the nodes, each one checks the shards assigned to it
+        ClusterMembership membership = service.getClusterMembership();
+        membership.join();
+        int shards = service.getAvailabilityCheckShards();
+        List<Integer> assignedShards = membership.getAssignedShards(shards);
+        log.debug("Start checking the available cold storage content of shards: {}", assignedShards);
+        long start = System.nanoTime();
+        List<Integer> checkedShards = new ArrayList<>();
+        for (int shard : assignedShards) {
+            // prevents two nodes from checking the same shard while rebalancing
+            ClusterLease lease = service.getAvailabilityCheckLease(shard);
+            if (!lease.acquire()) {
+                log.debug("Skip checking shard: {}, already done by node: {}", () -> shard, lease::getHolder);
+                continue;
+            }
+            checkedShards.add(shard);
+        }
+        // the documents being retrieved of a repository are read once for all the shards checked by this node
+        for (String repository : Framework.getService(RepositoryService.class).getRepositoryNames()) {
             CoreSession coreSession = CoreInstance.getCoreSessionSystem(repository);
-            service.checkDocToBeRetrieved(coreSession);
+            service.checkDocToBeRetrieved(coreSession, checkedShards, shards);
         }
+        ColdStorageMetrics.updateAvailabilityCheckTimer(membership.getNodeId(), checkedShards.size(), start);
         log.debug("End checking the available cold storage content");
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.events;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.ClusterLease;
+import org.nuxeo.coldstorage.service.ColdStorageService;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.event.EventBundle;
+import org.nuxeo.ecm.core.event.PostCommitEventListener;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * An asynchronous listener that reconciles the counters of the cold storage content status with the actual counts of
+ * documents.
+ *
+ * @apiNote This listener is designed to be called from a scheduler.
+ * @since 2021.4
+ */
+public class ReconcileColdStorageContentStatusListener implements PostCommitEventListener {
+
+    private static final Logger log = LogManager.getLogger(ReconcileColdStorageContentStatusListener.class);
+
+    protected static final String LEASE_NAME = "reconcileContentStatus";
+
+    @Override
+    public void handleEvent(EventBundle events) {
+        ColdStorageService service = Framework.getService(ColdStorageService.class);
+        // the reconciliation is scheduled on all the nodes, only the one holding the lease runs it
+        ClusterLease lease = service.getClusterLease(LEASE_NAME);
+        if (!lease.acquire()) {
+            log.debug("Skip reconciling the cold storage content status, already done by node: {}", lease::getHolder);
+            return;
+        }
+        log.debug("Start reconciling the cold storage content status");
+        List<String> repositoryNames = Framework.getService(RepositoryService.class).getRepositoryNames();
+        for (String repository : repositoryNames) {
+            CoreSession coreSession = CoreInstance.getCoreSessionSystem(repository);
+            service.reconcileContentStatus(coreSession);
+        }
+        log.debug("End reconciling the cold storage content status");
+    }
+}
@@ -21,6 +21,7 @@ package org.nuxeo.coldstorage.operations;
 
 import java.time.Duration;
 
+import org.nuxeo.coldstorage.RetrievalTier;
 import org.nuxeo.coldstorage.service.ColdStorageService;
 import org.nuxeo.ecm.automation.core.Constants;
 import org.nuxeo.ecm.automation.core.annotations.Context;
@@ -47,6 +48,13 @@ public class RequestRetrievalFromColdStorage {
     @Param(name = "numberOfDaysOfAvailability", description = "The number of days that you want your cold storage content to be accessible.", required = false)
     protected int numberOfDaysOfAvailability;
 
+    /**
+     * @since 2021.4
+     */
+    @Param(name = "tier", description = "The retrieval tier: Expedited, Standard or Bulk. Chosen by the configured policy if empty.", required = false, widget = Constants.W_OPTION, values = {
+            "Expedited", "Standard", "Bulk" })
+    protected String tier;
+
     @Context
     protected CoreSession session;
 
@@ -62,7 +70,7 @@ public class RequestRetrievalFromColdStorage {
             duration = Duration.ofDays(numberOfDaysOfAvailability);
         }
 
-        return service.retrieveFromColdStorage(session, doc.getRef(), duration);
+        return service.retrieveFromColdStorage(session, doc.getRef(), duration, RetrievalTier.parse(tier));
     }
 
 }
@@ -0,0 +1,170 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.ColdStorageMetrics;
+import org.nuxeo.coldstorage.TransactionBuffer;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Coalesces the bulk commands differing only by a value of their query, e.g. a blob digest, which are submitted during
+ * a transaction.
+ * <p>
+ * The values are buffered until the transaction commits, then one command is submitted per chunk of values with an
+ * {@code IN} query. Values are dropped if the transaction rolls back or is marked rollback-only, as
+ * {@link BulkService#submitTransactional} would do. Without transaction, the command is submitted right away.
+ *
+ * @since 2021.4
+ */
+public class BulkCommandCoalescer {
+
+    private static final Logger log = LogManager.getLogger(BulkCommandCoalescer.class);
+
+    protected final int maxValuesPerCommand;
+
+    protected final TransactionBuffer<Map<Key, Set<String>>> buffer = new TransactionBuffer<>(LinkedHashMap::new,
+            this::flush);
+
+    protected final AtomicLong requestedCount = new AtomicLong();
+
+    protected final AtomicLong submittedCount = new AtomicLong();
+
+    public BulkCommandCoalescer(int maxValuesPerCommand) {
+        this.maxValuesPerCommand = Math.max(1, maxValuesPerCommand);
+    }
+
+    /**
+     * Requests a bulk command for the given value.
+     *
+     * @param queryTemplate the NXQL query of the command, where {@code %s} is replaced by the escaped list of values
+     */
+    public void submit(CoreSession session, String action, String queryTemplate, String username, String value) {
+        requestedCount.incrementAndGet();
+        ColdStorageMetrics.incrementPropagationRequested(action);
+        Key key = new Key(session.getRepositoryName(), action, queryTemplate, username);
+        if (!buffer.add(values -> values.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(value))) {
+            submit(key, List.of(value));
+        }
+    }
+
+    protected void flush(Map<Key, Set<String>> values) {
+        values.forEach((key, keyValues) -> {
+            List<String> chunk = new ArrayList<>(maxValuesPerCommand);
+            for (String value : keyValues) {
+                chunk.add(value);
+                if (chunk.size() == maxValuesPerCommand) {
+                    submit(key, chunk);
+                    chunk = new ArrayList<>(maxValuesPerCommand);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(key, chunk);
+            }
+        });
+    }
+
+    protected void submit(Key key, List<String> values) {
+        String query = String.format(key.queryTemplate,
+                values.stream().map(NXQL::escapeString).collect(Collectors.joining(", ")));
+        try {
+            BulkService bulkService = Framework.getService(BulkService.class);
+            String commandId = bulkService.submit(
+                    new BulkCommand.Builder(key.action, query, key.username).repository(key.repository).build());
+            submittedCount.incrementAndGet();
+            ColdStorageMetrics.incrementPropagationSubmitted(key.action);
+            log.debug("Submitted command: {} for action: {} and {} values", commandId, key.action, values.size());
+        } catch (RuntimeException e) {
+            log.error("Unable to submit action: {} with query: {}", key.action, query, e);
+        }
+    }
+
+    /**
+     * Returns the number of commands requested through this coalescer.
+     */
+    public long getRequestedCount() {
+        return requestedCount.get();
+    }
+
+    /**
+     * Returns the number of commands actually submitted to the {@link BulkService}.
+     */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * Returns the number of commands saved by coalescing.
+     */
+    public long getSavedCount() {
+        return getRequestedCount() - getSubmittedCount();
+    }
+
+    protected static class Key {
+
+        protected final String repository;
+
+        protected final String action;
+
+        protected final String queryTemplate;
+
+        protected final String username;
+
+        protected Key(String repository, String action, String queryTemplate, String username) {
+            this.repository = repository;
+            this.action = action;
+            this.queryTemplate = queryTemplate;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return repository.equals(other.repository) && action.equals(other.action)
+                    && queryTemplate.equals(other.queryTemplate) && username.equals(other.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(repository, action, queryTemplate, username);
+        }
+    }
+
+}
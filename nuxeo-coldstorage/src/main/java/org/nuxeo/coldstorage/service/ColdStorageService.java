@@ -20,12 +20,27 @@
 package org.nuxeo.coldstorage.service;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
 
+import org.nuxeo.coldstorage.AvailabilityCheckSchedule;
+import org.nuxeo.coldstorage.BlobStatusCache;
+import org.nuxeo.coldstorage.ClusterLease;
+import org.nuxeo.coldstorage.ClusterMembership;
+import org.nuxeo.coldstorage.ColdDigestIndex;
+import org.nuxeo.coldstorage.ColdStorageConstants.ColdStorageContentStatus;
+import org.nuxeo.coldstorage.ColdStorageContentStatusCounters;
+import org.nuxeo.coldstorage.InFlightRetrievals;
+import org.nuxeo.coldstorage.RetrievalLedger;
+import org.nuxeo.coldstorage.RetrievalTier;
+import org.nuxeo.coldstorage.RetrievalTierPolicy;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobStatus;
 import org.nuxeo.ecm.core.blob.ManagedBlob;
 
 /**
@@ -83,6 +98,29 @@ public interface ColdStorageService {
      */
     DocumentModel retrieveFromColdStorage(CoreSession session, DocumentRef documentRef, Duration restoreDuration);
 
+    /**
+     * Requests a retrieval of the cold storage content associated with the document of the given {@link DocumentRef},
+     * with the given tier.
+     * <p>
+     * The tier of a new retrieval is stored on the document, the availability checks are scheduled according to its
+     * latency. It is ignored if the content is already being retrieved or available, and replaced by the
+     * {@link RetrievalTier#STANDARD standard} one if the blob provider doesn't support retrieval tiers.
+     *
+     * @param tier the retrieval tier, or {@code null} to choose it with the {@link #getRetrievalTierPolicy() policy},
+     *            as for an interactive retrieval
+     * @see #retrieveFromColdStorage(CoreSession, DocumentRef, Duration)
+     * @since 2021.4
+     */
+    DocumentModel retrieveFromColdStorage(CoreSession session, DocumentRef documentRef, Duration restoreDuration,
+            RetrievalTier tier);
+
+    /**
+     * Returns the policy choosing the retrieval tier when the caller doesn't request one.
+     *
+     * @since 2021.4
+     */
+    RetrievalTierPolicy getRetrievalTierPolicy();
+
     /**
      * Restores the cold content associated with the document of the given {@link DocumentRef} into its main storage.
      * <p/>
@@ -108,6 +146,54 @@ public interface ColdStorageService {
      */
     boolean checkIsRetrieved(CoreSession session, DocumentModel documentModel);
 
+    /**
+     * Checks if the main content is ready for download, given the status of its cold storage content which was
+     * previously fetched, possibly concurrently with other ones.
+     *
+     * @param blobStatus the status of the cold storage content, the check is skipped if {@code null}
+     * @see #checkIsRetrieved(CoreSession, DocumentModel)
+     * @since 2021.4
+     */
+    boolean checkIsRetrieved(CoreSession session, DocumentModel documentModel, BlobStatus blobStatus);
+
+    /**
+     * Checks if the main content is ready for download for the documents being retrieved which reference one of the
+     * given blobs as cold storage content, as {@link #checkIsRetrieved(CoreSession, DocumentModel)} does.
+     *
+     * @param blobKeys the keys of the blobs of which restore is known to be completed, without their provider prefix
+     * @return the number of documents of which content is ready for download
+     * @since 2021.4
+     */
+    int checkRestoreCompleted(CoreSession session, Collection<String> blobKeys);
+
+    /**
+     * Notifies that the restore of the given blob is completed, the documents referencing it are asynchronously
+     * checked.
+     *
+     * @param blobKey the blob key, with or without its provider prefix
+     * @see #checkRestoreCompleted(CoreSession, Collection)
+     * @since 2021.4
+     */
+    void notifyRestoreCompleted(String blobKey);
+
+    /**
+     * Returns the numbers of documents of the session repository of which cold storage content is being retrieved or
+     * available for download, read from counters updated on each transition of a document.
+     *
+     * @see #reconcileContentStatus(CoreSession)
+     * @since 2021.4
+     */
+    ColdStorageContentStatus getContentStatus(CoreSession session);
+
+    /**
+     * Counts the documents of the session repository of which cold storage content is being retrieved or available for
+     * download, and resets the counters read by {@link #getContentStatus(CoreSession)} accordingly.
+     *
+     * @return the actual status
+     * @since 2021.4
+     */
+    ColdStorageContentStatus reconcileContentStatus(CoreSession session);
+
     /**
      * Internal use.
      */
@@ -124,11 +210,96 @@ public interface ColdStorageService {
      */
     void checkDocToBeRetrieved(CoreSession session);
 
+    /**
+     * Submits the reset of the retrieval state of the documents of the session repository of which cold storage
+     * content was available for download until a date which has passed.
+     *
+     * @since 2021.4
+     */
+    void expireColdStorageContent(CoreSession session);
+
+    /**
+     * Resets the retrieval state of the given document if its cold storage content is no longer available for
+     * download, and fires the
+     * {@value org.nuxeo.coldstorage.ColdStorageConstants#COLD_STORAGE_CONTENT_EXPIRED_EVENT_NAME} event.
+     * <p>
+     * Internal use.
+     *
+     * @return {@code true} if the document was reset, {@code false} otherwise
+     * @since 2021.4
+     */
+    boolean proceedExpireColdStorageContent(CoreSession session, DocumentModel documentModel);
+
+    /**
+     * Checks the documents being retrieved of which cold storage content belongs to the given shard, out of the given
+     * number of shards.
+     * <p>
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    void checkDocToBeRetrieved(CoreSession session, int shard, int shards);
+
+    /**
+     * Checks the documents being retrieved of which cold storage content belongs to one of the given shards, out of
+     * the given number of shards, reading the documents being retrieved only once whatever the number of shards.
+     * <p>
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    void checkDocToBeRetrieved(CoreSession session, Collection<Integer> checkedShards, int shards);
+
     /**
      * Internal use.
      */
     DocumentModel proceedMoveToColdStorage(CoreSession session, DocumentRef documentRef);
 
+    /**
+     * Internal use.
+     *
+     * @param updateStorageClass whether the storage class of the main blob needs to be updated, {@code false} when it
+     *            has already been done for another document referencing the same blob
+     * @return the document, holding the
+     *         {@value org.nuxeo.coldstorage.ColdStorageConstants#COLD_STORAGE_CLASS_UPDATED_CONTEXT_DATA} context data
+     *         if the storage class of the main blob was updated
+     * @since 2021.4
+     */
+    DocumentModel proceedMoveToColdStorage(CoreSession session, DocumentRef documentRef, boolean updateStorageClass);
+
+    /**
+     * Completes the move to cold storage of the given document, moved with a temporary placeholder when
+     * {@value org.nuxeo.coldstorage.ColdStorageConstants#COLD_STORAGE_PLACEHOLDER_ASYNC_PROPERTY_NAME} is enabled: the
+     * placeholder rendition is computed from the cold storage content and replaces the temporary placeholder, then the
+     * storage class of the cold storage content is updated if needed.
+     * <p>
+     * Internal use.
+     *
+     * @return {@code true} if the document was updated, {@code false} if it doesn't exist anymore or is not waiting for
+     *         its placeholder rendition
+     * @throws NuxeoException if the placeholder rendition cannot be computed
+     * @since 2021.4
+     */
+    boolean computePlaceholderRendition(CoreSession session, String docId);
+
+    /**
+     * Schedules again the computation of the placeholder rendition of the documents still waiting for it, e.g. because
+     * it failed after all the retries of the stream processor, or because its scheduling failed.
+     * <p>
+     * Internal use.
+     *
+     * @return the number of documents scheduled
+     * @since 2021.4
+     */
+    int retryPlaceholderRenditions(CoreSession session);
+
+    /**
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    void propagateMoveToColdStorage(CoreSession session, String blobDigest);
+
     /**
      * Internal use.
      *
@@ -136,4 +307,136 @@ public interface ColdStorageService {
      */
     void propagateRestoreFromColdStorage(CoreSession session, String blobDigest);
 
+    /**
+     * Moves to cold storage the given documents, referencing as main content blobs already moved to cold storage by
+     * another document. The documents are updated as loaded, without updating the storage class of their blob again,
+     * and saved in batches. A single
+     * {@value org.nuxeo.coldstorage.ColdStorageConstants#COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME} event is fired
+     * for all the moved documents.
+     * <p>
+     * Internal use.
+     *
+     * @param onError the consumer of the documents which could not be moved, along with the error
+     * @return the number of moved documents
+     * @since 2021.4
+     */
+    int applyPropagatedMove(CoreSession session, List<DocumentModel> documents,
+            BiConsumer<DocumentModel, NuxeoException> onError);
+
+    /**
+     * Restores from cold storage the given documents, referencing as cold storage content blobs already restored by
+     * another document. The documents are updated as loaded, without updating the storage class of their blob again,
+     * and saved in batches. A single
+     * {@value org.nuxeo.coldstorage.ColdStorageConstants#COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME} event is fired
+     * for all the restored documents.
+     * <p>
+     * Internal use.
+     *
+     * @param onError the consumer of the documents which could not be restored, along with the error
+     * @return the number of restored documents
+     * @since 2021.4
+     */
+    int applyPropagatedRestore(CoreSession session, List<DocumentModel> documents,
+            BiConsumer<DocumentModel, NuxeoException> onError);
+
+    /**
+     * Checks whether the main blob of the given documents, which all reference the same one, is already in cold
+     * storage. If so, the documents are moved to cold storage, otherwise a restore is propagated to the documents
+     * referencing the blob as cold storage content, in case its storage class was overwritten.
+     * <p>
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    void checkAlreadyInColdStorage(CoreSession session, List<DocumentModel> documents);
+
+    /**
+     * Schedules the {@link #checkAlreadyInColdStorage check} of the main blob of the given document, which is run
+     * asynchronously once the current transaction commits, along with the one of the other documents of the
+     * transaction.
+     * <p>
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    void scheduleCheckAlreadyInColdStorage(CoreSession session, DocumentModel documentModel);
+
+    /**
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    BlobStatusCache getBlobStatusCache();
+
+    /**
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    AvailabilityCheckSchedule getAvailabilityCheckSchedule();
+
+    /**
+     * Returns the lease to take by the current node to run the scheduled availability check of the given shard.
+     * <p>
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    ClusterLease getAvailabilityCheckLease(int shard);
+
+    /**
+     * Returns the lease to take by the current node to run the given scheduled task alone.
+     * <p>
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    ClusterLease getClusterLease(String name);
+
+    /**
+     * Returns the number of shards the documents being retrieved are split into by the scheduled availability check.
+     * <p>
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    int getAvailabilityCheckShards();
+
+    /**
+     * Returns the membership of the current node among the nodes sharing the scheduled availability check.
+     * <p>
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    ClusterMembership getClusterMembership();
+
+    /**
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    ColdStorageContentStatusCounters getContentStatusCounters();
+
+    /**
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    RetrievalLedger getRetrievalLedger();
+
+    /**
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    InFlightRetrievals getInFlightRetrievals();
+
+    /**
+     * Internal use.
+     *
+     * @since 2021.4
+     */
+    ColdDigestIndex getColdDigestIndex();
+
 }
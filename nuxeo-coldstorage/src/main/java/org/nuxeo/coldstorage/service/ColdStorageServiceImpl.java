@@ -21,30 +21,74 @@
 
 package org.nuxeo.coldstorage.service;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
 import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static javax.servlet.http.HttpServletResponse.SC_PRECONDITION_FAILED;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BEING_RETRIEVED_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_MAX_SIZE_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_CRON_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_HEARTBEAT_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_LEASE_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_MAX_BACKOFF_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_SHARDS_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CLASS_UPDATED_CONTEXT_DATA;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_COLD_DIGESTS_EXPECTED_SIZE_PROPERTY_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_ARCHIVE_LOCATION_MAIL_TEMPLATE_KEY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_AVAILABLE_EVENT_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_AVAILABLE_NOTIFICATION_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_AVAILABLE_UNTIL_MAIL_TEMPLATE_KEY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_EXPIRED_EVENT_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_MOVED_EVENT_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPERTY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_RESTORED_EVENT_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_RESTORED_NOTIFICATION_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_STATUS_AVAILABLE_QUERY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_STATUS_EXPIRED_QUERY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_TO_RESTORE_EVENT_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_TO_RETRIEVE_EVENT_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_FACET_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_IN_FLIGHT_KEY_VALUE_STORE_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_KEY_VALUE_STORE_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_METRICS_DOCUMENT_COUNT_REFRESH_PROPERTY_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_NUMBER_OF_DAYS_OF_AVAILABILITY_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PLACEHOLDER_ASYNC_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PLACEHOLDER_REUSE_STORED_BLOBS_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PROPAGATED_ACTION_EVENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PROPAGATED_DIGESTS_EVENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PROPAGATED_DOCUMENTS_EVENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PROPAGATION_MAX_DIGESTS_PER_COMMAND_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_RETRIEVAL_TIER_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_RETRIEVE_TIER_BULK_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_RETRIEVE_TIER_EXPEDITED_MAX_SIZE_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_RETRIEVE_TIER_INTERACTIVE_PROPERTY_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_THUMBNAIL_PREVIEW_REQUIRED_PROPERTY_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_TO_BE_RESTORED_PROPERTY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.EVENT_CATEGORY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.EVENT_CATEGORY_LABEL;
 import static org.nuxeo.coldstorage.ColdStorageConstants.FILE_CONTENT_PROPERTY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.GET_DOCUMENTS_TO_CHECK_QUERY;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.METHOD_UPDATE_BLOB;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OPERATION_CHECK_IS_RETRIEVED;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OPERATION_GET_RENDITION;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OPERATION_MOVE;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OPERATION_RESTORE;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OPERATION_RETRIEVE;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OUTCOME_COMPUTED;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OUTCOME_FAILURE;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OUTCOME_NOT_RETRIEVED;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OUTCOME_RETRIEVED;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.OUTCOME_REUSED;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.incrementPlaceholder;
+import static org.nuxeo.coldstorage.ColdStorageMetrics.timeOperation;
 import static org.nuxeo.coldstorage.events.CheckAlreadyInColdStorageListener.DISABLE_CHECK_ALREADY_IN_COLD_STORAGE_LISTENER;
 import static org.nuxeo.coldstorage.events.PreventColdStorageUpdateListener.DISABLE_PREVENT_COLD_STORAGE_UPDATE_LISTENER;
 import static org.nuxeo.ecm.core.api.CoreSession.ALLOW_VERSION_WRITE;
@@ -52,35 +96,72 @@ import static org.nuxeo.ecm.core.api.versioning.VersioningService.DISABLE_AUTOMA
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.text.ParseException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nuxeo.coldstorage.AvailabilityCheckSchedule;
+import org.nuxeo.coldstorage.BlobStatusCache;
+import org.nuxeo.coldstorage.ClusterLease;
+import org.nuxeo.coldstorage.ClusterMembership;
+import org.nuxeo.coldstorage.ColdStorageConstants.ColdStorageContentStatus;
+import org.nuxeo.coldstorage.ColdStorageContentStatusCounters;
+import org.nuxeo.coldstorage.ColdDigestIndex;
 import org.nuxeo.coldstorage.ColdStorageHelper;
+import org.nuxeo.coldstorage.ColdStorageMetrics;
 import org.nuxeo.coldstorage.ColdStorageRenditionDescriptor;
+import org.nuxeo.coldstorage.ColdStorageRenditionResolver;
+import org.nuxeo.coldstorage.InFlightRetrievals;
+import org.nuxeo.coldstorage.RetrievalLedger;
+import org.nuxeo.coldstorage.RetrievalTier;
+import org.nuxeo.coldstorage.RetrievalTierPolicy;
+import org.nuxeo.coldstorage.TieredRestoreBlobProvider;
+import org.nuxeo.coldstorage.action.BatchedDocumentSaver;
+import org.nuxeo.coldstorage.action.CheckAlreadyInColdStorageAction;
 import org.nuxeo.coldstorage.action.CheckColdStorageAvailabilityAction;
+import org.nuxeo.coldstorage.action.ExpireColdStorageContentAction;
+import org.nuxeo.coldstorage.action.PlaceholderRenditionAction;
 import org.nuxeo.coldstorage.action.PropagateMoveToColdStorageContentAction;
 import org.nuxeo.coldstorage.action.PropagateRestoreFromColdStorageContentAction;
+import org.nuxeo.coldstorage.action.RestoreCompletedAction;
 import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
 import org.nuxeo.ecm.core.api.CoreInstance;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.DocumentSecurityException;
+import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.NuxeoPrincipal;
 import org.nuxeo.ecm.core.api.event.CoreEventConstants;
 import org.nuxeo.ecm.core.api.impl.DownloadBlobGuard;
 import org.nuxeo.ecm.core.api.security.SecurityConstants;
 import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
 import org.nuxeo.ecm.core.blob.BlobStatus;
 import org.nuxeo.ecm.core.blob.BlobUpdateContext;
 import org.nuxeo.ecm.core.blob.ManagedBlob;
@@ -90,7 +171,9 @@ import org.nuxeo.ecm.core.bulk.message.BulkStatus;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventService;
 import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.event.impl.EventContextImpl;
 import org.nuxeo.ecm.core.io.download.DownloadService;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.directory.Session;
 import org.nuxeo.ecm.directory.api.DirectoryService;
 import org.nuxeo.ecm.platform.ec.notification.NotificationConstants;
@@ -100,11 +183,22 @@ import org.nuxeo.ecm.platform.picture.listener.PictureViewsGenerationListener;
 import org.nuxeo.ecm.platform.rendition.Rendition;
 import org.nuxeo.ecm.platform.rendition.service.RenditionService;
 import org.nuxeo.ecm.platform.thumbnail.ThumbnailConstants;
+import org.nuxeo.ecm.platform.thumbnail.listener.ThumbnailHelper;
 import org.nuxeo.ecm.platform.thumbnail.listener.UpdateThumbnailListener;
 import org.nuxeo.ecm.platform.video.listener.VideoChangedListener;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.log.LogAppender;
+import org.nuxeo.lib.stream.log.Name;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.cluster.ClusterService;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.DefaultComponent;
+import org.nuxeo.runtime.pubsub.PubSubService;
+import org.nuxeo.runtime.stream.StreamService;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.quartz.CronExpression;
 
 /**
  * Default implementation of {@link ColdStorageService}.
@@ -115,6 +209,57 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
 
     private static final Logger log = LogManager.getLogger(ColdStorageServiceImpl.class);
 
+    /**
+     * Maximum number of documents checked by one bulk command, their identifiers being part of its query.
+     *
+     * @since 2021.4
+     */
+    protected static final int CHECK_MAX_DOCUMENTS_PER_COMMAND = 1000;
+
+    /**
+     * Number of upcoming intervals of the scheduled check sampled to find the longest one, e.g. over a day when hourly.
+     *
+     * @since 2021.4
+     */
+    protected static final int CHECK_INTERVAL_SAMPLES = 24;
+
+    /**
+     * @since 2021.4
+     */
+    protected static final String CHECK_AVAILABILITY_LEASE_NAME = "checkAvailability:";
+
+    /**
+     * @since 2021.4
+     */
+    protected static final String COLD_STORAGE_CONTENT_DATA = COLD_STORAGE_CONTENT_PROPERTY + "/data";
+
+    /**
+     * @since 2021.4
+     */
+    protected static final String GET_DOCUMENT_IDS_TO_CHECK_QUERY = GET_DOCUMENTS_TO_CHECK_QUERY.replace("SELECT *",
+            String.format("SELECT %s, %s", NXQL.ECM_UUID, COLD_STORAGE_CONTENT_DATA));
+
+    /**
+     * @since 2021.4
+     */
+    protected static final String GET_COLD_DIGESTS_QUERY = String.format(
+            "SELECT %s, %s/digest FROM Document WHERE ecm:mixinType = '%s' AND ecm:isProxy = 0 AND %s IS NOT NULL",
+            NXQL.ECM_UUID, COLD_STORAGE_CONTENT_PROPERTY, COLD_STORAGE_FACET_NAME, COLD_STORAGE_CONTENT_DATA);
+
+    /**
+     * @since 2021.4
+     */
+    protected static final String GET_PLACEHOLDER_PENDING_DOCUMENT_IDS_QUERY = String.format(
+            "SELECT %s FROM Document WHERE ecm:mixinType = '%s' AND ecm:isProxy = 0 AND %s = 1", NXQL.ECM_UUID,
+            COLD_STORAGE_FACET_NAME, COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY);
+
+    /**
+     * Number of rows read per page by the reconciliation of the cold storage content status.
+     *
+     * @since 2021.4
+     */
+    protected static final int RECONCILE_PAGE_SIZE = 1000;
+
     protected static final List<String> COLD_STORAGE_DISABLED_RECOMPUTATION_LISTENERS = Arrays.asList(
             UpdateThumbnailListener.THUMBNAIL_UPDATED, ThumbnailConstants.DISABLE_THUMBNAIL_COMPUTATION,
             VideoChangedListener.DISABLE_VIDEO_CONVERSIONS_GENERATION_LISTENER,
@@ -122,11 +267,39 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
 
     public static final String COLDSTORAGE_RENDITION_EP = "coldStorageRendition";
 
-    protected String defaultRendition;
+    /**
+     * @since 2021.4
+     */
+    protected static final String TEMPORARY_PLACEHOLDER_CONTENT = "The preview of this document is being generated.";
+
+    /**
+     * @since 2021.4
+     */
+    protected static final String TEMPORARY_PLACEHOLDER_FILENAME = "placeholder.txt";
+
+    protected ColdStorageRenditionResolver renditionResolver;
+
+    protected volatile BlobStatusCache blobStatusCache;
+
+    protected volatile BulkCommandCoalescer bulkCommandCoalescer;
+
+    protected volatile ColdStorageContentStatusCounters contentStatusCounters;
+
+    protected volatile InFlightRetrievals inFlightRetrievals;
 
-    protected Map<String, String> renditionByDocType;
+    protected volatile ColdDigestIndex coldDigestIndex;
 
-    protected Map<String, String> renditionByFacets;
+    protected volatile AvailabilityCheckSchedule availabilityCheckSchedule;
+
+    protected volatile RetrievalLedger retrievalLedger;
+
+    protected volatile ClusterMembership clusterMembership;
+
+    protected volatile RetrievalTierPolicy retrievalTierPolicy;
+
+    protected final Map<String, ClusterLease> clusterLeases = new ConcurrentHashMap<>();
+
+    protected int reconcilePageSize = RECONCILE_PAGE_SIZE;
 
     public ColdStorageServiceImpl() {
         // no instance allowed
@@ -134,28 +307,19 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
 
     @Override
     public void start(ComponentContext context) {
-        // init rendition by doc/facet
-        renditionByDocType = new HashMap<>();
-        renditionByFacets = new HashMap<>();
+        // compile the renditions by doc/facet/content
         List<ColdStorageRenditionDescriptor> descriptors = getDescriptors(COLDSTORAGE_RENDITION_EP);
         descriptors.forEach(descriptor -> {
-            String docType = descriptor.getDocType();
-            String renditionName = descriptor.getRenditionName();
-            if (docType != null) {
-                renditionByDocType.put(docType, renditionName);
-            }
-            String facet = descriptor.getFacet();
-            if (facet != null) {
-                renditionByFacets.put(facet, renditionName);
-            }
-            if (docType == null && facet == null) {
-                defaultRendition = renditionName;
-                if (defaultRendition == null) {
-                    throw new NuxeoException(
-                            String.format("Please contribute a default rendition name: %s", descriptor.getName()));
-                }
+            if (descriptor.getDocType() == null && descriptor.getFacet() == null && !descriptor.hasContentCondition()
+                    && descriptor.getRenditionName() == null) {
+                throw new NuxeoException(
+                        String.format("Please contribute a default rendition name: %s", descriptor.getName()));
             }
         });
+        renditionResolver = new ColdStorageRenditionResolver(descriptors);
+        long refreshSeconds = Long.parseLong(
+                Framework.getProperty(COLD_STORAGE_METRICS_DOCUMENT_COUNT_REFRESH_PROPERTY_NAME, "60"));
+        ColdStorageMetrics.registerGauges(refreshSeconds);
         // Let's add cold storage event category in appropriate directory.
         Framework.doPrivileged(() -> {
             DirectoryService directoryService = Framework.getService(DirectoryService.class);
@@ -178,32 +342,48 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
 
     @Override
     public void stop(ComponentContext context) throws InterruptedException {
-        defaultRendition = null;
-        renditionByDocType = null;
-        renditionByFacets = null;
-    }
-
-    public String getRenditionName(DocumentModel doc) {
-        String docType = doc.getType();
-        if (renditionByDocType.containsKey(docType)) {
-            return renditionByDocType.get(docType);
+        ColdStorageMetrics.unregisterGauges();
+        renditionResolver = null;
+        if (blobStatusCache != null) {
+            blobStatusCache.stop();
+            blobStatusCache = null;
         }
-        for (Map.Entry<String, String> entry : renditionByFacets.entrySet()) {
-            if (doc.hasFacet(entry.getKey())) {
-                return entry.getValue();
-            }
+        bulkCommandCoalescer = null;
+        contentStatusCounters = null;
+        inFlightRetrievals = null;
+        if (coldDigestIndex != null) {
+            coldDigestIndex.stop();
+            coldDigestIndex = null;
         }
+        availabilityCheckSchedule = null;
+        retrievalLedger = null;
+        retrievalTierPolicy = null;
+        clusterLeases.clear();
+        try {
+            // let the other nodes take over the shards of this node
+            getClusterMembership().leave();
+        } catch (RuntimeException e) {
+            log.debug("Unable to leave the cold storage cluster membership", e);
+        }
+        clusterMembership = null;
+    }
 
-        if (defaultRendition == null) {
+    public String getRenditionName(DocumentModel doc) {
+        String renditionName = renditionResolver.resolve(doc);
+        if (renditionName == null) {
             throw new NuxeoException(
                     String.format("Please contribute a default rendition name for document docType %s and facets %s",
-                            docType, doc.getFacets()));
+                            doc.getType(), doc.getFacets()));
         }
-        return defaultRendition;
+        return renditionName;
     }
 
     @Override
     public Blob getRendition(CoreSession session, DocumentModel doc) {
+        return timeOperation(OPERATION_GET_RENDITION, () -> doGetRendition(session, doc));
+    }
+
+    protected Blob doGetRendition(CoreSession session, DocumentModel doc) {
         String renditionName = getRenditionName(doc);
         if (Framework.isBooleanPropertyTrue(COLD_STORAGE_THUMBNAIL_PREVIEW_REQUIRED_PROPERTY_NAME)
                 && "thumbnail".equals(renditionName)) {
@@ -215,9 +395,18 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
                         SC_PRECONDITION_FAILED);
             }
         }
+        if (Framework.isBooleanPropertyTrue(COLD_STORAGE_PLACEHOLDER_REUSE_STORED_BLOBS_PROPERTY_NAME)) {
+            Blob storedBlob = getStoredRendition(doc, renditionName);
+            if (storedBlob != null) {
+                log.debug("Reusing the stored {} rendition of document: {}", renditionName, doc.getId());
+                incrementPlaceholder(OUTCOME_REUSED);
+                return storedBlob;
+            }
+        }
         try {
             RenditionService renditionService = Framework.getService(RenditionService.class);
             Rendition rendition = renditionService.getRendition(doc, renditionName);
+            incrementPlaceholder(OUTCOME_COMPUTED);
             return rendition.getBlob();
         } catch (NuxeoException e) {
             throw new NuxeoException(String.format("Cannot retrieve the rendition for document %s.", doc), e,
@@ -225,6 +414,75 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
         }
     }
 
+    /**
+     * Returns the derived blob stored on the given document for the given rendition name: the thumbnail for the
+     * {@code thumbnail} rendition, the picture view or the video conversion of the same name otherwise. The stored blob
+     * is referenced as is, without any copy.
+     *
+     * @return the stored blob, or {@code null} if it is missing or may not have been computed from the current main
+     *         content
+     * @since 2021.4
+     */
+    protected Blob getStoredRendition(DocumentModel doc, String renditionName) {
+        if (!isMainContentUnchanged(doc)) {
+            // the derived blobs will be recomputed from the new main content
+            return null;
+        }
+        if ("thumbnail".equals(renditionName)) {
+            return doc.hasFacet(ThumbnailConstants.THUMBNAIL_FACET)
+                    ? (Blob) doc.getPropertyValue(ThumbnailConstants.THUMBNAIL_PROPERTY_NAME)
+                    : null;
+        }
+        if (doc.hasFacet("Picture")) {
+            Blob view = getStoredDerivedBlob(doc, "picture:views", "title", renditionName);
+            if (view != null) {
+                return view;
+            }
+        }
+        if (doc.hasFacet("Video")) {
+            return getStoredDerivedBlob(doc, "vid:transcodedVideos", "name", renditionName);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the content of the item of the given list property of which the given key has the given name.
+     *
+     * @since 2021.4
+     */
+    @SuppressWarnings("unchecked")
+    protected Blob getStoredDerivedBlob(DocumentModel doc, String xpath, String key, String name) {
+        List<Map<String, Serializable>> items = (List<Map<String, Serializable>>) doc.getPropertyValue(xpath);
+        if (items == null) {
+            return null;
+        }
+        return items.stream()
+                    .filter(item -> name.equals(item.get(key)))
+                    .map(item -> (Blob) item.get("content"))
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(null);
+    }
+
+    /**
+     * Checks whether the main content of the given document is the one from which its derived blobs were computed,
+     * that is it is not modified, or is set back to its cold storage content by
+     * {@link #computePlaceholderRendition(CoreSession, String)}.
+     *
+     * @since 2021.4
+     */
+    protected boolean isMainContentUnchanged(DocumentModel doc) {
+        if (!doc.getProperty(FILE_CONTENT_PROPERTY).isDirty()) {
+            return true;
+        }
+        Blob mainContent = (Blob) doc.getPropertyValue(FILE_CONTENT_PROPERTY);
+        Blob coldContent = doc.hasFacet(COLD_STORAGE_FACET_NAME)
+                ? (Blob) doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY)
+                : null;
+        return mainContent != null && coldContent != null && mainContent.getDigest() != null
+                && mainContent.getDigest().equals(coldContent.getDigest());
+    }
+
     @Override
     public DocumentModel moveToColdStorage(CoreSession session, DocumentRef documentRef) {
         DocumentModel documentModel = proceedMoveToColdStorage(session, documentRef);
@@ -236,7 +494,30 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
 
     @Override
     public DocumentModel proceedMoveToColdStorage(CoreSession session, DocumentRef documentRef) {
-        DocumentModel documentModel = session.getDocument(documentRef);
+        return proceedMoveToColdStorage(session, documentRef, true);
+    }
+
+    @Override
+    public DocumentModel proceedMoveToColdStorage(CoreSession session, DocumentRef documentRef,
+            boolean updateStorageClass) {
+        return timeOperation(OPERATION_MOVE,
+                () -> doProceedMoveToColdStorage(session, documentRef, updateStorageClass));
+    }
+
+    protected DocumentModel doProceedMoveToColdStorage(CoreSession session, DocumentRef documentRef,
+            boolean updateStorageClass) {
+        return doProceedMoveToColdStorage(session, session.getDocument(documentRef), updateStorageClass, true);
+    }
+
+    /**
+     * Moves the main content of the given document, as loaded by the caller, to cold storage.
+     *
+     * @param notify whether to fire the event of the move, for audit purpose
+     * @since 2021.4
+     */
+    protected DocumentModel doProceedMoveToColdStorage(CoreSession session, DocumentModel documentModel,
+            boolean updateStorageClass, boolean notify) {
+        DocumentRef documentRef = documentModel.getRef();
         if (session.isUnderRetentionOrLegalHold(documentRef)) {
             log.debug("The document {} is under retention or legal hold and cannot be moved to cold storage",
                     () -> documentRef);
@@ -263,56 +544,211 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
                     SC_NOT_FOUND);
         }
 
-        // retrieve the rendition which will be used to replace the content, once the move done
-        Blob renditionBlob = getRendition(session, documentModel);
+        // retrieve the rendition which will be used to replace the content, once the move done, unless it is computed
+        // afterwards, a temporary placeholder replacing the content meanwhile
+        boolean asyncPlaceholder = Framework.isBooleanPropertyTrue(COLD_STORAGE_PLACEHOLDER_ASYNC_PROPERTY_NAME);
+        Blob renditionBlob = asyncPlaceholder ? createTemporaryPlaceholder() : getRendition(session, documentModel);
 
         documentModel.addFacet(COLD_STORAGE_FACET_NAME);
         documentModel.setPropertyValue(COLD_STORAGE_CONTENT_PROPERTY, mainContent);
         documentModel.setPropertyValue(FILE_CONTENT_PROPERTY, null);
+        getColdDigestIndex().recordMove(((Blob) mainContent).getDigest());
+
+        if (asyncPlaceholder) {
+            // the storage class is updated once the rendition computed, as the rendition may need the main content
+            documentModel.setPropertyValue(COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY, true);
+            schedulePlaceholderRendition(session, documentModel.getId());
+        } else if (updateStorageClass && updateStorageClass(documentModel, (Blob) mainContent)) {
+            documentModel.putContextData(COLD_STORAGE_CLASS_UPDATED_CONTEXT_DATA, true);
+        }
+
+        disableRecomputation(documentModel);
+
+        // replace the file content document by the rendition
+        documentModel.setPropertyValue(FILE_CONTENT_PROPERTY, (Serializable) renditionBlob);
 
+        if (notify) {
+            // For audit purpose
+            fireEvent(documentModel, session, COLD_STORAGE_CONTENT_MOVED_EVENT_NAME);
+        }
+        return documentModel;
+    }
+
+    /**
+     * Moves the given cold storage content of the given document to cold storage if it is not there yet.
+     *
+     * @return {@code true} if the storage class of the blob was updated, {@code false} if it was already in cold
+     *         storage
+     * @since 2021.4
+     */
+    protected boolean updateStorageClass(DocumentModel documentModel, Blob coldContent) {
         try {
-            Blob coldContent = (Blob) mainContent;
+            boolean updated = false;
             BlobStatus oldStatus = ColdStorageHelper.getStatus((ManagedBlob) coldContent);
             if (!ColdStorageHelper.isInColdStorage(oldStatus)) {
                 // No need to update the class
                 // To be re-factored when we support more storage class
                 String key = getContentBlobKey(coldContent);
                 BlobUpdateContext updateContext = new BlobUpdateContext(key).withColdStorageClass(true);
-                Framework.getService(BlobManager.class).getBlobProvider(coldContent).updateBlob(updateContext);
+                updateBlob(coldContent, updateContext);
+                updated = true;
             } else {
                 log.warn("Main blob {} for document {} is already in cold storage with storage class {}",
                         coldContent::getDigest, documentModel::getId, oldStatus::getStorageClass);
             }
+            // a restore requested before the content was last restored doesn't hold anymore
+            getRetrievalLedger().remove(getContentBlobKey(coldContent));
+            return updated;
         } catch (IOException e) {
             throw new NuxeoException(e);
         }
+    }
 
+    /**
+     * Disables the recomputation of the properties derived from the main content of the given document, about to be
+     * replaced by its placeholder.
+     *
+     * @since 2021.4
+     */
+    protected void disableRecomputation(DocumentModel documentModel) {
         // THUMBNAIL_UPDATED: disabling is needed otherwise as the content is now `null` the thumbnail will be also
         // `null` See CheckBlobUpdateListener#handleEvent
         COLD_STORAGE_DISABLED_RECOMPUTATION_LISTENERS.forEach(name -> documentModel.putContextData(name, true));
         documentModel.putContextData(DISABLE_AUTOMATIC_VERSIONING, true);
 
-        // replace the file content document by the rendition
-        documentModel.setPropertyValue(FILE_CONTENT_PROPERTY, (Serializable) renditionBlob);
-
         // FIXME
         if (documentModel.hasFacet("Picture")) {
             // re-set the picture views so that they are dirty and won't be updated
             documentModel.setPropertyValue("picture:views", documentModel.getPropertyValue("picture:views"));
         }
+    }
 
-        // For audit purpose
-        fireEvent(documentModel, session, COLD_STORAGE_CONTENT_MOVED_EVENT_NAME);
-        return documentModel;
+    /**
+     * Returns the placeholder replacing the main content of a document moved to cold storage until its placeholder
+     * rendition is computed.
+     *
+     * @since 2021.4
+     */
+    protected Blob createTemporaryPlaceholder() {
+        return Blobs.createBlob(TEMPORARY_PLACEHOLDER_CONTENT, "text/plain", UTF_8.name(),
+                TEMPORARY_PLACEHOLDER_FILENAME);
+    }
+
+    /**
+     * Schedules the computation of the placeholder rendition of the given document, once the current transaction is
+     * committed.
+     *
+     * @since 2021.4
+     */
+    protected void schedulePlaceholderRendition(CoreSession session, String docId) {
+        String repository = session.getRepositoryName();
+        if (!TransactionHelper.isTransactionActiveOrMarkedRollback()) {
+            appendPlaceholderRendition(repository, docId);
+            return;
+        }
+        TransactionHelper.registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // nothing to do
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    appendPlaceholderRendition(repository, docId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Appends the record of the given document to the placeholder rendition stream.
+     *
+     * @return {@code true} if the record was appended
+     * @since 2021.4
+     */
+    protected boolean appendPlaceholderRendition(String repository, String docId) {
+        try {
+            Framework.getService(StreamService.class)
+                     .getLogManager()
+                     .getAppender(Name.ofUrn(PlaceholderRenditionAction.STREAM_NAME))
+                     .append(docId, Record.of(docId, PlaceholderRenditionAction.toData(repository, docId)));
+            return true;
+        } catch (RuntimeException e) {
+            // the document keeps its temporary placeholder, it is scheduled again by the retry of the pending ones
+            log.warn("Unable to schedule the placeholder rendition of document: {}", docId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public int retryPlaceholderRenditions(CoreSession session) {
+        // the records being keyed by document id, a document still queued is computed once, the next record skipping it
+        AtomicInteger scheduled = new AtomicInteger();
+        forEachProjectionPage(session, GET_PLACEHOLDER_PENDING_DOCUMENT_IDS_QUERY, rows -> rows.forEach(row -> {
+            if (appendPlaceholderRendition(session.getRepositoryName(), (String) row.get(NXQL.ECM_UUID))) {
+                scheduled.incrementAndGet();
+            }
+        }));
+        log.debug("Scheduled again the placeholder rendition of {} documents of repository: {}", scheduled::get,
+                session::getRepositoryName);
+        return scheduled.get();
+    }
+
+    @Override
+    public boolean computePlaceholderRendition(CoreSession session, String docId) {
+        DocumentRef documentRef = new IdRef(docId);
+        if (!session.exists(documentRef)) {
+            log.debug("Document: {} doesn't exist anymore, no placeholder rendition to compute", docId);
+            return false;
+        }
+        DocumentModel documentModel = session.getDocument(documentRef);
+        if (!documentModel.hasFacet(COLD_STORAGE_FACET_NAME)
+                || !Boolean.TRUE.equals(documentModel.getPropertyValue(COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY))) {
+            log.debug("Document: {} is not waiting for its placeholder rendition", docId);
+            return false;
+        }
+        Blob coldContent = (Blob) documentModel.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+        // the rendition is computed as for a synchronous move, from the main content
+        documentModel.setPropertyValue(FILE_CONTENT_PROPERTY, (Serializable) coldContent);
+        Blob renditionBlob = getRendition(session, documentModel);
+        boolean updated = updateStorageClass(documentModel, coldContent);
+
+        disableRecomputation(documentModel);
+        documentModel.setPropertyValue(FILE_CONTENT_PROPERTY, (Serializable) renditionBlob);
+        documentModel.setPropertyValue(COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY, false);
+        documentModel.putContextData(DISABLE_PREVENT_COLD_STORAGE_UPDATE_LISTENER, true);
+        if (documentModel.isVersion()) {
+            documentModel.putContextData(ALLOW_VERSION_WRITE, true);
+        }
+        session.saveDocument(documentModel);
+        if (updated) {
+            // move the documents created with the same main blob since the move, which kept their main content
+            propagateMoveToColdStorage(session, coldContent.getDigest());
+        }
+        return true;
     }
 
     @Override
     public DocumentModel retrieveFromColdStorage(CoreSession session, DocumentRef documentRef,
             Duration restoreDuration) {
+        return retrieveFromColdStorage(session, documentRef, restoreDuration, null);
+    }
+
+    @Override
+    public DocumentModel retrieveFromColdStorage(CoreSession session, DocumentRef documentRef,
+            Duration restoreDuration, RetrievalTier tier) {
+        return timeOperation(OPERATION_RETRIEVE,
+                () -> doRetrieveFromColdStorage(session, documentRef, restoreDuration, tier));
+    }
+
+    protected DocumentModel doRetrieveFromColdStorage(CoreSession session, DocumentRef documentRef,
+            Duration restoreDuration, RetrievalTier tier) {
         Objects.requireNonNull(restoreDuration, "Restore duration is required");
         DocumentModel documentModel = session.getDocument(documentRef);
         log.debug("Retrieve from cold storage the content of document: {} for a duration: {}", documentModel,
                 restoreDuration);
+        int state = ColdStorageContentStatusCounters.getState(documentModel);
 
         if (!documentModel.hasFacet(COLD_STORAGE_FACET_NAME)
                 || documentModel.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY) == null) {
@@ -327,11 +763,18 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
                             documentModel),
                     SC_FORBIDDEN);
         }
-        BlobStatus blobStatus = ColdStorageHelper.getBlobStatus(documentModel);
+        if (Boolean.TRUE.equals(documentModel.getPropertyValue(COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY))) {
+            throw new NuxeoException(
+                    String.format("The content of the document: %s is being moved to cold storage.", documentModel),
+                    SC_CONFLICT);
+        }
+        // a stale status would request the restore again, or miss the restore requested by another node
+        BlobStatus blobStatus = ColdStorageHelper.getBlobStatus(documentModel, false);
         Function<DocumentModel, Boolean> doNotify;
         DocumentModel docResult = null;
         Blob coldContent = (Blob) documentModel.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
         String key = getContentBlobKey(coldContent);
+        String ledgerDocument = RetrievalLedger.Entry.document(session.getRepositoryName(), documentModel.getId());
         if (ColdStorageHelper.isDownloadable(blobStatus)) {
             Instant downloadableUntil = blobStatus.getDownloadableUntil();
             if (downloadableUntil == null) {
@@ -349,22 +792,47 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
                     Date.from(blobStatus.getDownloadableUntil()));
             doNotify = doc -> false;
         } else if (blobStatus.isOngoingRestore()) {
+            // the restore was requested earlier, its completion date is unknown
+            RetrievalTier retrievalTier = ColdStorageHelper.getRetrievalTier(documentModel);
+            RetrievalLedger.Entry requested = getRetrievalLedger().request(key, retrievalTier, ledgerDocument,
+                    session.getPrincipal().getName(), restoreDuration);
+            if (requested != null) {
+                retrievalTier = requested.getRetrievalTier();
+            }
             documentModel.setPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY, true);
+            documentModel.setPropertyValue(COLD_STORAGE_RETRIEVAL_TIER_PROPERTY, retrievalTier.name());
+            getAvailabilityCheckSchedule().scheduleNextCheck(documentModel.getId(), retrievalTier);
             doNotify = doc -> true;
         } else {
-            try {
-                BlobUpdateContext updateContext = new BlobUpdateContext(key).withRestoreForDuration(restoreDuration);
-                Framework.getService(BlobManager.class).getBlobProvider(coldContent).updateBlob(updateContext);
-            } catch (IOException e) {
-                log.error("Could not retrieve document {} for duration {} seconds", documentModel::getId,
-                        restoreDuration::getSeconds);
-                throw new NuxeoException(e);
+            // record the tier actually used, the availability checks being scheduled according to its latency
+            RetrievalTier retrievalTier = getSupportedRetrievalTier(coldContent,
+                    tier != null ? tier : getRetrievalTierPolicy().choose(coldContent.getLength(), true));
+            RetrievalLedger ledger = getRetrievalLedger();
+            RetrievalLedger.Entry requested = ledger.request(key, retrievalTier, ledgerDocument,
+                    session.getPrincipal().getName(), restoreDuration);
+            if (requested == null) {
+                try {
+                    requestRestore(coldContent, restoreDuration, retrievalTier);
+                } catch (IOException e) {
+                    ledger.remove(key);
+                    log.error("Could not retrieve document {} for duration {} seconds", documentModel::getId,
+                            restoreDuration::getSeconds);
+                    throw new NuxeoException(e);
+                }
+                doNotify = doc -> CoreInstance.doPrivileged(session, s -> {
+                    // The check retrieval may need to modify metadata of document too
+                    return !checkIsRetrieved(s, doc);
+                });
+            } else {
+                // the restore was requested for another document sharing the same content, maybe from another node
+                log.debug("Restore of cold content blob: {} of document: {} already requested with tier: {}", key,
+                        documentRef, requested.tier);
+                retrievalTier = requested.getRetrievalTier();
+                doNotify = doc -> true;
             }
             documentModel.setPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY, true);
-            doNotify = doc -> CoreInstance.doPrivileged(session, s -> {
-                // The check retrieval may need to modify metadata of document too
-                return !checkIsRetrieved(s, doc);
-            });
+            documentModel.setPropertyValue(COLD_STORAGE_RETRIEVAL_TIER_PROPERTY, retrievalTier.name());
+            getAvailabilityCheckSchedule().scheduleFirstCheck(documentModel.getId(), retrievalTier);
         }
         docResult = CoreInstance.doPrivileged(session, s -> {
             // The retrieval is allowed for users with only READ access.
@@ -375,6 +843,7 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
             }
             return s.saveDocument(documentModel);
         });
+        recordTransition(session, docResult, state, ColdStorageContentStatusCounters.getState(docResult));
 
         // Fire event for audit purpose
         fireEvent(docResult, session, COLD_STORAGE_CONTENT_TO_RETRIEVE_EVENT_NAME);
@@ -393,6 +862,10 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
 
     @Override
     public DocumentModel restoreFromColdStorage(CoreSession session, DocumentRef documentRef) {
+        return timeOperation(OPERATION_RESTORE, () -> doRestoreFromColdStorage(session, documentRef));
+    }
+
+    protected DocumentModel doRestoreFromColdStorage(CoreSession session, DocumentRef documentRef) {
         DocumentModel documentModel = session.getDocument(documentRef);
         log.debug("Restore from cold storage the main content of document: {}", documentModel);
 
@@ -459,29 +932,46 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
         if (coldContent == null) {
             throw new NuxeoException(String.format("Cold content is null for document: %s", documentModel.getId()));
         }
+        int state = ColdStorageContentStatusCounters.getState(documentModel);
         try {
             String key = getContentBlobKey(coldContent);
             BlobUpdateContext updateContext = new BlobUpdateContext(key).withColdStorageClass(false);
-            Framework.getService(BlobManager.class).getBlobProvider(coldContent).updateBlob(updateContext);
+            updateBlob(coldContent, updateContext);
         } catch (IOException e) {
             log.error("Could not restore document {}", documentModel::getId);
             throw new NuxeoException(e);
         }
-        // We must reset all properties of the Cold Storage facet before removing it, otherwise the properties will
-        // still have the old values if we add back the facet (i.e. send back to cold storage)
-        documentModel.setPropertyValue(COLD_STORAGE_CONTENT_PROPERTY, null);
-        documentModel.setPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY, null);
-        documentModel.setPropertyValue(COLD_STORAGE_TO_BE_RESTORED_PROPERTY, null);
-        documentModel.setPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL, null);
+        prepareRestoreMainContent(documentModel, coldContent);
+        documentModel = session.saveDocument(documentModel);
+        recordTransition(session, documentModel, state, ColdStorageContentStatusCounters.STATE_NONE);
+        getColdDigestIndex().recordRestore(coldContent.getDigest());
 
-        // Disable main and ColdStorage storage contents check otherwise, the restore action won't be allowed
-        documentModel.putContextData(DISABLE_PREVENT_COLD_STORAGE_UPDATE_LISTENER, true);
-        if (documentModel.isVersion()) {
-            documentModel.putContextData(ALLOW_VERSION_WRITE, true);
+        if (propagate) {
+            // Submit Bulk action to update documents referencing the same blob
+            propagateRestoreFromColdStorage(session, coldContent.getDigest());
         }
-        documentModel = session.saveDocument(documentModel);
-        documentModel.removeFacet(COLD_STORAGE_FACET_NAME);
 
+        // Send notification
+        if (notify) {
+            DocumentEventContext ctx = new DocumentEventContext(session, session.getPrincipal(), documentModel);
+            EventService eventService = Framework.getService(EventService.class);
+            ctx.setProperty(COLD_STORAGE_CONTENT_RESTORED_EVENT_NAME, "true");
+            eventService.fireEvent(ctx.newEvent(COLD_STORAGE_CONTENT_RESTORED_EVENT_NAME));
+        }
+        return documentModel;
+    }
+
+    /**
+     * Restores in memory the main content of the given document from its cold storage content, to be saved in a single
+     * write by the caller.
+     *
+     * @since 2021.4
+     */
+    protected void prepareRestoreMainContent(DocumentModel documentModel, Blob coldContent) {
+        // Removing the facet clears its properties in the repository, along with the restore of the main content in a
+        // single write, so that they don't have their old values if the facet is added back (i.e. send back to cold
+        // storage)
+        documentModel.removeFacet(COLD_STORAGE_FACET_NAME);
         documentModel.setPropertyValue(FILE_CONTENT_PROPERTY, (Serializable) coldContent);
         // Disable main and ColdStorage storage contents check otherwise, the restore action won't be allowed
         documentModel.putContextData(DISABLE_PREVENT_COLD_STORAGE_UPDATE_LISTENER, true);
@@ -496,67 +986,318 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
         if (documentModel.isVersion()) {
             documentModel.putContextData(ALLOW_VERSION_WRITE, true);
         }
-        documentModel = session.saveDocument(documentModel);
+    }
 
-        if (propagate) {
-            // Submit Bulk action to update documents referencing the same blob
-            propagateRestoreFromColdStorage(session, coldContent.getDigest());
+    @Override
+    public void propagateMoveToColdStorage(CoreSession session, String blobDigest) {
+        String query = String.format("SELECT * FROM Document WHERE ecm:mixinType <> '%s' AND %s/digest IN (%%s)",
+                COLD_STORAGE_FACET_NAME, FILE_CONTENT_PROPERTY);
+        log.debug("Moving documents referencing blob: {}", blobDigest);
+        getBulkCommandCoalescer().submit(session, PropagateMoveToColdStorageContentAction.ACTION_NAME, query,
+                SecurityConstants.SYSTEM_USERNAME, blobDigest);
+    }
+
+    /**
+     * Restore from ColdStorage all documents referencing the given blob digests as main content.
+     *
+     * @param session the session
+     * @param blobDigest the blob digest
+     */
+    @Override
+    public void propagateRestoreFromColdStorage(CoreSession session, String blobDigest) {
+        String query = String.format("SELECT * FROM Document WHERE %s/digest IN (%%s)", COLD_STORAGE_CONTENT_PROPERTY);
+        log.debug("Restoring documents referencing blob: {}", blobDigest);
+        getBulkCommandCoalescer().submit(session, PropagateRestoreFromColdStorageContentAction.ACTION_NAME, query,
+                SecurityConstants.SYSTEM_USERNAME, blobDigest);
+    }
+
+    @Override
+    public int applyPropagatedMove(CoreSession session, List<DocumentModel> documents,
+            BiConsumer<DocumentModel, NuxeoException> onError) {
+        List<DocumentModel> moved = new ArrayList<>();
+        try (BatchedDocumentSaver saver = new BatchedDocumentSaver(session,
+                PropagateMoveToColdStorageContentAction.ACTION_NAME, onError)) {
+            for (DocumentModel document : documents) {
+                if (document.hasFacet(COLD_STORAGE_FACET_NAME)) {
+                    log.info("The main content is already in cold storage for document: {}", document::getId);
+                    continue;
+                }
+                try {
+                    // the storage class of the blob was updated by the document which triggered the propagation
+                    DocumentModel documentModel = timeOperation(OPERATION_MOVE,
+                            () -> doProceedMoveToColdStorage(session, document, false, false));
+                    if (documentModel.isVersion()) {
+                        documentModel.putContextData(ALLOW_VERSION_WRITE, true);
+                    }
+                    saver.add(documentModel);
+                    moved.add(documentModel);
+                } catch (NuxeoException e) {
+                    onError.accept(document, e);
+                }
+            }
+            saver.flush();
+            moved.removeIf(documentModel -> saver.isFailed(documentModel.getId()));
         }
+        firePropagatedEvent(session, PropagateMoveToColdStorageContentAction.ACTION_NAME, moved,
+                COLD_STORAGE_CONTENT_PROPERTY);
+        return moved.size();
+    }
 
-        // Send notification
-        if (notify) {
-            DocumentEventContext ctx = new DocumentEventContext(session, session.getPrincipal(), documentModel);
-            EventService eventService = Framework.getService(EventService.class);
-            ctx.setProperty(COLD_STORAGE_CONTENT_RESTORED_EVENT_NAME, "true");
-            eventService.fireEvent(ctx.newEvent(COLD_STORAGE_CONTENT_RESTORED_EVENT_NAME));
+    @Override
+    public int applyPropagatedRestore(CoreSession session, List<DocumentModel> documents,
+            BiConsumer<DocumentModel, NuxeoException> onError) {
+        List<DocumentModel> restored = new ArrayList<>();
+        Map<String, Integer> states = new HashMap<>();
+        try (BatchedDocumentSaver saver = new BatchedDocumentSaver(session,
+                PropagateRestoreFromColdStorageContentAction.ACTION_NAME, onError)) {
+            for (DocumentModel document : documents) {
+                if (!document.hasFacet(COLD_STORAGE_FACET_NAME)) {
+                    log.info("The main content for document: {} is not in cold storage.", document::getId);
+                    continue;
+                }
+                Blob coldContent = (Blob) document.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+                if (coldContent == null) {
+                    onError.accept(document, new NuxeoException(
+                            String.format("Cold content is null for document: %s", document.getId())));
+                    continue;
+                }
+                // the storage class of the blob was restored by the document which triggered the propagation
+                states.put(document.getId(), ColdStorageContentStatusCounters.getState(document));
+                prepareRestoreMainContent(document, coldContent);
+                saver.add(document);
+                restored.add(document);
+            }
+            saver.flush();
+            restored.removeIf(documentModel -> saver.isFailed(documentModel.getId()));
         }
-        return documentModel;
+        for (DocumentModel documentModel : restored) {
+            recordTransition(session, documentModel, states.get(documentModel.getId()),
+                    ColdStorageContentStatusCounters.STATE_NONE);
+            getColdDigestIndex().recordRestore(
+                    ((Blob) documentModel.getPropertyValue(FILE_CONTENT_PROPERTY)).getDigest());
+        }
+        firePropagatedEvent(session, PropagateRestoreFromColdStorageContentAction.ACTION_NAME, restored,
+                FILE_CONTENT_PROPERTY);
+        return restored.size();
     }
 
-    public void propagateMoveToColdStorage(CoreSession session, String blobDigest) {
-        String query = String.format(
-                "SELECT * FROM Document WHERE ecm:mixinType <> '%s' AND file:content/digest = '%s'",
-                COLD_STORAGE_FACET_NAME, blobDigest);
+    /**
+     * Fires a single {@value org.nuxeo.coldstorage.ColdStorageConstants#COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME}
+     * event for the given documents updated by the given propagation action, if any.
+     *
+     * @param blobProperty the property holding the propagated blob once the documents updated
+     * @since 2021.4
+     */
+    protected void firePropagatedEvent(CoreSession session, String action, List<DocumentModel> documents,
+            String blobProperty) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        ArrayList<String> ids = new ArrayList<>();
+        LinkedHashSet<String> digests = new LinkedHashSet<>();
+        for (DocumentModel documentModel : documents) {
+            ids.add(documentModel.getId());
+            Blob blob = (Blob) documentModel.getPropertyValue(blobProperty);
+            if (blob != null && blob.getDigest() != null) {
+                digests.add(blob.getDigest());
+            }
+        }
+        EventContextImpl ctx = new EventContextImpl(session, session.getPrincipal());
+        ctx.setRepositoryName(session.getRepositoryName());
+        ctx.setProperty(CoreEventConstants.REPOSITORY_NAME, session.getRepositoryName());
+        ctx.setProperty("category", EVENT_CATEGORY);
+        ctx.setProperty(COLD_STORAGE_PROPAGATED_ACTION_EVENT_PROPERTY, action);
+        ctx.setProperty(COLD_STORAGE_PROPAGATED_DOCUMENTS_EVENT_PROPERTY, ids);
+        ctx.setProperty(COLD_STORAGE_PROPAGATED_DIGESTS_EVENT_PROPERTY, new ArrayList<>(digests));
+        Framework.getService(EventService.class).fireEvent(ctx.newEvent(COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME));
+    }
 
-        BulkService bulkService = Framework.getService(BulkService.class);
-        String username = SecurityConstants.SYSTEM_USERNAME;
-        String commandId = bulkService.submitTransactional(
-                new BulkCommand.Builder(PropagateMoveToColdStorageContentAction.ACTION_NAME, query, username).build());
+    @Override
+    public void checkAlreadyInColdStorage(CoreSession session, List<DocumentModel> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        Blob blob = (Blob) documents.get(0).getPropertyValue(FILE_CONTENT_PROPERTY);
+        if (!(blob instanceof ManagedBlob)) {
+            return;
+        }
+        if (!getColdDigestIndex().mightBeCold(session.getRepositoryName(), blob.getDigest())) {
+            // neither in cold storage nor referenced as cold storage content, nothing to move or restore
+            log.trace("Main blob: {} is not in cold storage", blob::getDigest);
+            return;
+        }
+        // a single probe for all the documents sharing the blob
+        if (ColdStorageHelper.isInColdStorage((ManagedBlob) blob)) {
+            ThumbnailHelper thumbnailHelper = new ThumbnailHelper();
+            for (DocumentModel doc : documents) {
+                log.debug("Main blob: {} is already in cold storage, need to update document: {} accordingly",
+                        blob::getDigest, doc::getId);
+                // We need to make sure the thumbnail is available to use it as placeholder of the main blob
+                thumbnailHelper.createThumbnailIfNeeded(session, doc);
+                DocumentModel moved = proceedMoveToColdStorage(session, doc.getRef());
+                if (moved.isVersion()) {
+                    moved.putContextData(CoreSession.ALLOW_VERSION_WRITE, true);
+                }
+                session.saveDocument(moved);
+            }
+        } else if (hasPendingPlaceholder(session, blob.getDigest())) {
+            // documents moved with a temporary placeholder update the storage class of the blob later on, then
+            // propagate their move to the documents referencing the blob meanwhile
+            log.debug("Main blob: {} is being moved to cold storage", blob::getDigest);
+        } else {
+            // If the blob was already in Cold Storage state, the creation of the documents has overwritten the blob
+            // and it will now have the default storage class.
+            // Let's propagate a restore to update other documents referencing this blob accordingly if needed
+            log.debug("Main blob: {} is not in cold storage, let's propagate a restore in case the creation/update of "
+                    + "documents: {} restored it", blob::getDigest,
+                    () -> documents.stream().map(DocumentModel::getId).collect(Collectors.toList()));
+            propagateRestoreFromColdStorage(session, blob.getDigest());
+        }
+    }
 
-        log.debug("Moving documents referencing blob: {}, status: {}", () -> blobDigest,
-                () -> bulkService.getStatus(commandId));
+    /**
+     * Returns whether a document referencing the blob of the given digest as cold storage content is waiting for its
+     * placeholder rendition.
+     *
+     * @since 2021.4
+     */
+    protected boolean hasPendingPlaceholder(CoreSession session, String digest) {
+        String query = String.format("SELECT %s FROM Document WHERE %s/digest = %s AND %s = 1", NXQL.ECM_UUID,
+                COLD_STORAGE_CONTENT_PROPERTY, NXQL.escapeString(digest), COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY);
+        return !session.queryProjection(query, 1, 0).isEmpty();
+    }
+
+    @Override
+    public void scheduleCheckAlreadyInColdStorage(CoreSession session, DocumentModel documentModel) {
+        log.debug("Scheduling the check of the main blob of document: {}", documentModel::getId);
+        getBulkCommandCoalescer().submit(session, CheckAlreadyInColdStorageAction.ACTION_NAME,
+                "SELECT * FROM Document WHERE ecm:uuid IN (%s)", SecurityConstants.SYSTEM_USERNAME,
+                documentModel.getId());
     }
 
     /**
-     * Restore from ColdStorage all documents referencing the given blob digests as main content.
+     * Returns the coalescer of the propagation bulk commands submitted by this service.
      *
-     * @param session the session
-     * @param blobDigests the blob digests
+     * @since 2021.4
      */
-    public void propagateRestoreFromColdStorage(CoreSession session, String blobDigest) {
-        String query = String.format("SELECT * FROM Document WHERE %s/digest = '%s'", COLD_STORAGE_CONTENT_PROPERTY,
-                blobDigest);
+    public BulkCommandCoalescer getBulkCommandCoalescer() {
+        BulkCommandCoalescer coalescer = bulkCommandCoalescer;
+        if (coalescer == null) {
+            synchronized (this) {
+                coalescer = bulkCommandCoalescer;
+                if (coalescer == null) {
+                    int maxDigests = Integer.parseInt(Framework.getProperty(
+                            COLD_STORAGE_PROPAGATION_MAX_DIGESTS_PER_COMMAND_PROPERTY_NAME, "100"));
+                    coalescer = bulkCommandCoalescer = new BulkCommandCoalescer(maxDigests);
+                }
+            }
+        }
+        return coalescer;
+    }
 
+    @Override
+    public void expireColdStorageContent(CoreSession session) {
         BulkService bulkService = Framework.getService(BulkService.class);
-        String username = SecurityConstants.SYSTEM_USERNAME;
-        String commandId = bulkService.submitTransactional(new BulkCommand.Builder(
-                PropagateRestoreFromColdStorageContentAction.ACTION_NAME, query, username).build());
-        log.debug("Restoring documents referencing blob: {}, status: {}", () -> blobDigest,
-                () -> bulkService.getStatus(commandId));
+        String commandId = bulkService.submit(
+                new BulkCommand.Builder(ExpireColdStorageContentAction.ACTION_NAME,
+                        COLD_STORAGE_CONTENT_STATUS_EXPIRED_QUERY, SecurityConstants.SYSTEM_USERNAME).repository(
+                                session.getRepositoryName()).build());
+        log.debug("Expiring cold storage content of repository: {} with command: {}", session::getRepositoryName,
+                () -> commandId);
+    }
+
+    @Override
+    public boolean proceedExpireColdStorageContent(CoreSession session, DocumentModel documentModel) {
+        if (!documentModel.hasFacet(COLD_STORAGE_FACET_NAME)
+                || Boolean.TRUE.equals(documentModel.getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY))) {
+            return false;
+        }
+        Calendar downloadableUntil = (Calendar) documentModel.getPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL);
+        if (downloadableUntil == null || downloadableUntil.getTimeInMillis() > System.currentTimeMillis()) {
+            log.trace("The cold storage content of document {} is not expired", documentModel::getId);
+            return false;
+        }
+        log.debug("The cold storage content of document {} expired at {}", documentModel::getId,
+                downloadableUntil::toInstant);
+        documentModel.setPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL, null);
+        documentModel.putContextData(DISABLE_AUTOMATIC_VERSIONING, true);
+        if (documentModel.isVersion()) {
+            documentModel.putContextData(ALLOW_VERSION_WRITE, true);
+        }
+        DocumentModel doc = session.saveDocument(documentModel);
+        // counted as available until now, unless reconciled since it expired
+        recordTransition(session, doc, ColdStorageContentStatusCounters.STATE_AVAILABLE,
+                ColdStorageContentStatusCounters.STATE_NONE);
+        Serializable coldContent = doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+        if (coldContent instanceof ManagedBlob) {
+            // the blob went back to cold storage
+            getBlobStatusCache().invalidate(((ManagedBlob) coldContent).getKey());
+        }
+        fireEvent(doc, session, COLD_STORAGE_CONTENT_EXPIRED_EVENT_NAME);
+        return true;
     }
 
     @Override
     public void checkDocToBeRetrieved(CoreSession session) {
+        AvailabilityCheckSchedule schedule = getAvailabilityCheckSchedule();
+        InFlightRetrievals retrievals = getReconciledInFlightRetrievals(session);
+        List<String> ids = retrievals.getDocumentIds(session.getRepositoryName())
+                                     .stream()
+                                     .filter(schedule::isDue)
+                                     .collect(Collectors.toList());
+        submitCheckDocToBeRetrieved(session, ids);
+    }
+
+    @Override
+    public void checkDocToBeRetrieved(CoreSession session, int shard, int shards) {
+        checkDocToBeRetrieved(session, Set.of(shard), shards);
+    }
+
+    @Override
+    public void checkDocToBeRetrieved(CoreSession session, Collection<Integer> checkedShards, int shards) {
+        if (checkedShards.isEmpty()) {
+            return;
+        }
+        Set<Integer> shardSet = new HashSet<>(checkedShards);
+        AvailabilityCheckSchedule schedule = getAvailabilityCheckSchedule();
+        // a single read of the documents being retrieved, split in memory
+        InFlightRetrievals retrievals = getReconciledInFlightRetrievals(session);
+        List<String> ids = retrievals.getDocuments(session.getRepositoryName())
+                                     .entrySet()
+                                     .stream()
+                                     .filter(e -> shardSet.contains(InFlightRetrievals.getShard(e.getValue(), shards)))
+                                     .map(Map.Entry::getKey)
+                                     .filter(schedule::isDue)
+                                     .collect(Collectors.toList());
+        submitCheckDocToBeRetrieved(session, ids);
+    }
+
+    /**
+     * Submits the commands checking the given documents being retrieved.
+     *
+     * @since 2021.4
+     */
+    protected void submitCheckDocToBeRetrieved(CoreSession session, List<String> ids) {
+        if (ids.isEmpty()) {
+            log.debug("No document to be retrieved to check in repository: {}", session::getRepositoryName);
+            return;
+        }
         BulkService bulkService = Framework.getService(BulkService.class);
         String username = SecurityConstants.SYSTEM_USERNAME;
-        String commandId = bulkService.submit(new BulkCommand.Builder(CheckColdStorageAvailabilityAction.ACTION_NAME,
-                GET_DOCUMENTS_TO_CHECK_QUERY, username).build());
+        for (int i = 0; i < ids.size(); i += CHECK_MAX_DOCUMENTS_PER_COMMAND) {
+            List<String> chunk = ids.subList(i, Math.min(i + CHECK_MAX_DOCUMENTS_PER_COMMAND, ids.size()));
+            String query = String.format("%s AND %s IN (%s)", GET_DOCUMENTS_TO_CHECK_QUERY, NXQL.ECM_UUID,
+                    chunk.stream().map(NXQL::escapeString).collect(Collectors.joining(", ")));
+            String commandId = bulkService.submit(
+                    new BulkCommand.Builder(CheckColdStorageAvailabilityAction.ACTION_NAME, query, username).repository(
+                            session.getRepositoryName()).build());
 
-        BulkStatus status = bulkService.getStatus(commandId);
-        if (status == null) {
-            log.error("Unable to check documents to be retrieved");
-        } else {
-            log.debug("Checking documents to be retrieved");
+            BulkStatus status = bulkService.getStatus(commandId);
+            if (status == null) {
+                log.error("Unable to check documents to be retrieved");
+            } else {
+                log.debug("Checking {} documents to be retrieved", chunk::size);
+            }
         }
     }
 
@@ -566,50 +1307,250 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
             log.debug("Document {} is not under cold storage", doc::getPath);
             return false;
         }
+        return checkIsRetrieved(session, doc, ColdStorageHelper.getBlobStatus(doc, false));
+    }
 
-        BlobStatus blobStatus = ColdStorageHelper.getBlobStatus(doc);
+    @Override
+    public boolean checkIsRetrieved(CoreSession session, DocumentModel doc, BlobStatus blobStatus) {
+        long start = System.nanoTime();
+        String outcome = OUTCOME_FAILURE;
+        try {
+            boolean retrieved = doCheckIsRetrieved(session, doc, blobStatus);
+            outcome = retrieved ? OUTCOME_RETRIEVED : OUTCOME_NOT_RETRIEVED;
+            return retrieved;
+        } finally {
+            ColdStorageMetrics.updateOperationTimer(OPERATION_CHECK_IS_RETRIEVED, outcome, start);
+        }
+    }
+
+    protected boolean doCheckIsRetrieved(CoreSession session, DocumentModel doc, BlobStatus blobStatus) {
+        if (!doc.hasFacet(COLD_STORAGE_FACET_NAME) || doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY) == null) {
+            log.debug("Document {} is not under cold storage", doc::getPath);
+            return false;
+        }
+        if (blobStatus == null) {
+            log.debug("Unknown status of the cold storage content of document {}", doc::getPath);
+            return false;
+        }
+        String key = getContentBlobKey((Blob) doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY));
+        RetrievalLedger ledger = getRetrievalLedger();
         if (blobStatus.isDownloadable()) {
-            // Check if the Document should be restored definitively
-            Serializable undoMove = doc.getPropertyValue(COLD_STORAGE_TO_BE_RESTORED_PROPERTY);
-            if (Boolean.TRUE.equals(undoMove)) {
-                proceedRestoreMainContent(session, doc, true);
-            } else {
-                doc.setPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY, false);
-
-                DocumentEventContext ctx = new DocumentEventContext(session, session.getPrincipal(), doc);
-                Instant downloadableUntil = blobStatus.getDownloadableUntil();
-                if (downloadableUntil != null) {
-                    ctx.getProperties()
-                       .put(COLD_STORAGE_CONTENT_AVAILABLE_UNTIL_MAIL_TEMPLATE_KEY, downloadableUntil.toString());
-                    doc.setPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL, Date.from(downloadableUntil));
-                }
-                if (doc.isVersion()) {
-                    doc.putContextData(ALLOW_VERSION_WRITE, true);
-                }
-                doc = session.saveDocument(doc);
-                EventService eventService = Framework.getService(EventService.class);
-                DownloadService downloadService = Framework.getService(DownloadService.class);
-                String fileName = ((Blob) doc.getProperty(COLD_STORAGE_CONTENT_PROPERTY).getValue()).getFilename();
-                String serverUrl = NotificationServiceHelper.getNotificationService().getServerUrlPrefix();
-                String downloadUrl = serverUrl + downloadService.getDownloadUrl(session.getRepositoryName(),
-                        doc.getId(), COLD_STORAGE_CONTENT_PROPERTY, fileName, null);
-                ctx.getProperties().put(COLD_STORAGE_CONTENT_ARCHIVE_LOCATION_MAIL_TEMPLATE_KEY, downloadUrl);
-                eventService.fireEvent(ctx.newEvent(COLD_STORAGE_CONTENT_AVAILABLE_EVENT_NAME));
+            RetrievalLedger.Entry entry = ledger.get(key);
+            if (entry != null && entry.isCompleted() && !Boolean.TRUE.equals(
+                    session.getDocument(doc.getRef()).getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY))) {
+                log.debug("Document {} was already resolved with the documents sharing its cold content", doc::getPath);
+                return true;
+            }
+            resolveRetrieved(session, doc, blobStatus);
+            RetrievalLedger.Entry completed = ledger.complete(key, session.getRepositoryName());
+            if (completed != null) {
+                resolveWaitingDocuments(session, doc.getId(), completed, blobStatus);
             }
             return true;
         } else if (!blobStatus.isOngoingRestore()) {
+            // the status may come from the cache, make sure the restore is over before dropping the retrieval
+            BlobStatus currentStatus = ColdStorageHelper.getBlobStatus(doc, false);
+            if (currentStatus != null && (currentStatus.isDownloadable() || currentStatus.isOngoingRestore())) {
+                return doCheckIsRetrieved(session, doc, currentStatus);
+            }
+            int state = ColdStorageContentStatusCounters.getState(doc);
             // the blob was probably retrieved and it already went back to cold storage
             // Let's flag it as not being retrieved
             log.debug("Document {} is flagged as being retrieved but not its blob", doc::getPath);
+            getAvailabilityCheckSchedule().remove(doc.getId());
+            ledger.remove(key);
             doc.setPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY, false);
             if (doc.isVersion()) {
                 doc.putContextData(ALLOW_VERSION_WRITE, true);
             }
             doc = session.saveDocument(doc);
+            recordTransition(session, doc, state, ColdStorageContentStatusCounters.getState(doc));
         }
         return false;
     }
 
+    /**
+     * Resolves the documents waiting for the given completed restore, other than the given one, with the given status
+     * of their cold storage content.
+     *
+     * @return the number of resolved documents
+     * @since 2021.4
+     */
+    protected int resolveWaitingDocuments(CoreSession session, String resolvedId, RetrievalLedger.Entry entry,
+            BlobStatus blobStatus) {
+        String prefix = RetrievalLedger.Entry.document(session.getRepositoryName(), "");
+        List<String> ids = entry.documents.stream()
+                                          .map(document -> document.substring(prefix.length()))
+                                          .filter(id -> !id.equals(resolvedId))
+                                          .collect(Collectors.toList());
+        int resolved = 0;
+        for (int i = 0; i < ids.size(); i += CHECK_MAX_DOCUMENTS_PER_COMMAND) {
+            List<String> chunk = ids.subList(i, Math.min(i + CHECK_MAX_DOCUMENTS_PER_COMMAND, ids.size()));
+            String query = String.format("%s AND %s IN (%s)", GET_DOCUMENTS_TO_CHECK_QUERY, NXQL.ECM_UUID,
+                    chunk.stream().map(NXQL::escapeString).collect(Collectors.joining(", ")));
+            for (DocumentModel waiting : session.query(query)) {
+                resolveRetrieved(session, waiting, blobStatus);
+                resolved++;
+            }
+        }
+        log.debug("{} documents waiting for the restore of the cold content of document: {} resolved", resolved,
+                resolvedId);
+        return resolved;
+    }
+
+    /**
+     * Updates the given document of which cold storage content is retrieved.
+     *
+     * @since 2021.4
+     */
+    protected void resolveRetrieved(CoreSession session, DocumentModel doc, BlobStatus blobStatus) {
+        int state = ColdStorageContentStatusCounters.getState(doc);
+        getAvailabilityCheckSchedule().remove(doc.getId());
+        // Check if the Document should be restored definitively
+        Serializable undoMove = doc.getPropertyValue(COLD_STORAGE_TO_BE_RESTORED_PROPERTY);
+        if (Boolean.TRUE.equals(undoMove)) {
+            proceedRestoreMainContent(session, doc, true);
+        } else {
+            doc.setPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY, false);
+
+            DocumentEventContext ctx = new DocumentEventContext(session, session.getPrincipal(), doc);
+            Instant downloadableUntil = blobStatus.getDownloadableUntil();
+            if (downloadableUntil != null) {
+                ctx.getProperties()
+                   .put(COLD_STORAGE_CONTENT_AVAILABLE_UNTIL_MAIL_TEMPLATE_KEY, downloadableUntil.toString());
+                doc.setPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL, Date.from(downloadableUntil));
+            }
+            if (doc.isVersion()) {
+                doc.putContextData(ALLOW_VERSION_WRITE, true);
+            }
+            doc = session.saveDocument(doc);
+            recordTransition(session, doc, state, ColdStorageContentStatusCounters.getState(doc));
+            EventService eventService = Framework.getService(EventService.class);
+            DownloadService downloadService = Framework.getService(DownloadService.class);
+            String fileName = ((Blob) doc.getProperty(COLD_STORAGE_CONTENT_PROPERTY).getValue()).getFilename();
+            String serverUrl = NotificationServiceHelper.getNotificationService().getServerUrlPrefix();
+            String downloadUrl = serverUrl + downloadService.getDownloadUrl(session.getRepositoryName(),
+                    doc.getId(), COLD_STORAGE_CONTENT_PROPERTY, fileName, null);
+            ctx.getProperties().put(COLD_STORAGE_CONTENT_ARCHIVE_LOCATION_MAIL_TEMPLATE_KEY, downloadUrl);
+            eventService.fireEvent(ctx.newEvent(COLD_STORAGE_CONTENT_AVAILABLE_EVENT_NAME));
+        }
+    }
+
+    @Override
+    public int checkRestoreCompleted(CoreSession session, Collection<String> blobKeys) {
+        if (blobKeys.isEmpty()) {
+            return 0;
+        }
+        // the stored key of a blob is prefixed by its provider, unless it belongs to the default one
+        Set<String> providerIds = Framework.getService(BlobManager.class).getBlobProviders().keySet();
+        List<String> storedKeys = new ArrayList<>();
+        for (String key : blobKeys) {
+            storedKeys.add(key);
+            providerIds.forEach(providerId -> storedKeys.add(providerId + ':' + key));
+        }
+        String query = String.format("%s AND %s IN (%s)", GET_DOCUMENTS_TO_CHECK_QUERY, COLD_STORAGE_CONTENT_DATA,
+                storedKeys.stream().map(NXQL::escapeString).collect(Collectors.joining(", ")));
+        int retrieved = 0;
+        for (DocumentModel doc : session.query(query)) {
+            // the restore is known to be completed, don't rely on a cached ongoing restore status
+            Blob coldContent = (Blob) doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+            getBlobStatusCache().invalidate(((ManagedBlob) coldContent).getKey());
+            if (checkIsRetrieved(session, doc)) {
+                retrieved++;
+            }
+        }
+        log.debug("{} documents retrieved for blobs: {}", retrieved, blobKeys);
+        return retrieved;
+    }
+
+    @Override
+    public void notifyRestoreCompleted(String blobKey) {
+        LogAppender<Record> appender = Framework.getService(StreamService.class)
+                                                .getLogManager()
+                                                .getAppender(Name.ofUrn(RestoreCompletedAction.STREAM_NAME));
+        appender.append(blobKey, Record.of(blobKey, blobKey.getBytes(UTF_8)));
+    }
+
+    @Override
+    public ColdStorageContentStatus getContentStatus(CoreSession session) {
+        return getContentStatusCounters().getStatus(session.getRepositoryName());
+    }
+
+    @Override
+    public ColdStorageContentStatus reconcileContentStatus(CoreSession session) {
+        long beingRetrieved = reconcileInFlightRetrievals(session);
+        // the digests are added page by page, the repository is only marked as reconciled once all are added
+        ColdDigestIndex index = getColdDigestIndex();
+        AtomicInteger added = new AtomicInteger();
+        forEachProjectionPage(session, GET_COLD_DIGESTS_QUERY, rows -> {
+            Set<String> coldDigests = rows.stream()
+                                          .map(row -> row.get(COLD_STORAGE_CONTENT_PROPERTY + "/digest"))
+                                          .filter(Objects::nonNull)
+                                          .map(Serializable::toString)
+                                          .collect(Collectors.toSet());
+            added.addAndGet(index.add(coldDigests));
+        });
+        index.markReconciled(session.getRepositoryName());
+        log.debug("Reconciled the digests in cold storage of repository: {}, {} added", session::getRepositoryName,
+                added::get);
+        long available = session.query(COLD_STORAGE_CONTENT_STATUS_AVAILABLE_QUERY, null, 1, 0, true).totalSize();
+        ColdStorageContentStatusCounters counters = getContentStatusCounters();
+        ColdStorageContentStatus previous = counters.getStatus(session.getRepositoryName());
+        counters.reset(session.getRepositoryName(), beingRetrieved, available);
+        log.debug("Reconciled cold storage content status of repository: {}, being retrieved: {} -> {}, available: {}"
+                + " -> {}", session::getRepositoryName, previous::getTotalBeingRetrieved, () -> beingRetrieved,
+                previous::getTotalAvailable, () -> available);
+        return counters.getStatus(session.getRepositoryName());
+    }
+
+    /**
+     * Resets the set of the documents of the given repository being retrieved to the actual ones.
+     *
+     * @return the number of documents being retrieved
+     * @since 2021.4
+     */
+    protected int reconcileInFlightRetrievals(CoreSession session) {
+        Map<String, String> beingRetrievedDocs = new HashMap<>();
+        forEachProjectionPage(session, GET_DOCUMENT_IDS_TO_CHECK_QUERY, rows -> rows.forEach(
+                row -> beingRetrievedDocs.put((String) row.get(NXQL.ECM_UUID),
+                        (String) row.get(COLD_STORAGE_CONTENT_DATA))));
+        int changed = getInFlightRetrievals().reset(session.getRepositoryName(), beingRetrievedDocs);
+        log.debug("Reconciled the documents being retrieved of repository: {}, {} changes", session::getRepositoryName,
+                () -> changed);
+        return beingRetrievedDocs.size();
+    }
+
+    /**
+     * Returns the set of the documents being retrieved, reconciled first with the documents of the given repository
+     * if it never was, e.g. right after an upgrade, or if one of its updates failed.
+     *
+     * @since 2021.4
+     */
+    protected InFlightRetrievals getReconciledInFlightRetrievals(CoreSession session) {
+        InFlightRetrievals retrievals = getInFlightRetrievals();
+        if (!retrievals.isReconciled(session.getRepositoryName())) {
+            reconcileInFlightRetrievals(session);
+        }
+        return retrievals;
+    }
+
+    /**
+     * Calls the given consumer on each page of rows of the given projection query, read in document order.
+     *
+     * @since 2021.4
+     */
+    protected void forEachProjectionPage(CoreSession session, String query,
+            Consumer<List<Map<String, Serializable>>> consumer) {
+        String orderedQuery = String.format("%s ORDER BY %s", query, NXQL.ECM_UUID);
+        for (long offset = 0;; offset += reconcilePageSize) {
+            List<Map<String, Serializable>> rows = session.queryProjection(orderedQuery, reconcilePageSize, offset);
+            consumer.accept(rows);
+            if (rows.size() < reconcilePageSize) {
+                return;
+            }
+        }
+    }
+
     public static String getContentBlobKey(Blob coldContent) {
         String key = ((ManagedBlob) coldContent).getKey();
         int colon = key.indexOf(':');
@@ -619,6 +1560,275 @@ public class ColdStorageServiceImpl extends DefaultComponent implements ColdStor
         return key;
     }
 
+    /**
+     * Updates the given blob and invalidates its cached status.
+     *
+     * @since 2021.4
+     */
+    protected void updateBlob(Blob blob, BlobUpdateContext updateContext) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Framework.getService(BlobManager.class).getBlobProvider(blob).updateBlob(updateContext);
+        } finally {
+            ColdStorageMetrics.updateBlobProviderTimer(METHOD_UPDATE_BLOB, start);
+            getBlobStatusCache().invalidate(((ManagedBlob) blob).getKey());
+        }
+    }
+
+    /**
+     * Returns the given tier if the blob provider of the given blob supports retrieval tiers, the
+     * {@link RetrievalTier#STANDARD standard} one, which is its default, otherwise.
+     *
+     * @since 2021.4
+     */
+    protected RetrievalTier getSupportedRetrievalTier(Blob blob, RetrievalTier tier) {
+        BlobProvider provider = Framework.getService(BlobManager.class).getBlobProvider(blob);
+        return provider instanceof TieredRestoreBlobProvider ? tier : RetrievalTier.STANDARD;
+    }
+
+    /**
+     * Requests the restore of the given blob with the given tier if its blob provider supports it, with its default
+     * tier otherwise, and invalidates its cached status.
+     *
+     * @since 2021.4
+     */
+    protected void requestRestore(Blob blob, Duration restoreDuration, RetrievalTier tier) throws IOException {
+        BlobProvider provider = Framework.getService(BlobManager.class).getBlobProvider(blob);
+        if (!(provider instanceof TieredRestoreBlobProvider)) {
+            log.trace("Blob provider: {} doesn't support retrieval tiers, using its default one", provider);
+            updateBlob(blob, new BlobUpdateContext(getContentBlobKey(blob)).withRestoreForDuration(restoreDuration));
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            ((TieredRestoreBlobProvider) provider).restoreForDuration((ManagedBlob) blob, restoreDuration, tier);
+        } finally {
+            ColdStorageMetrics.updateBlobProviderTimer(METHOD_UPDATE_BLOB, start);
+            getBlobStatusCache().invalidate(((ManagedBlob) blob).getKey());
+        }
+    }
+
+    /**
+     * @since 2021.4
+     */
+    protected KeyValueStore getKeyValueStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(COLD_STORAGE_KEY_VALUE_STORE_NAME);
+    }
+
+    @Override
+    public BlobStatusCache getBlobStatusCache() {
+        BlobStatusCache cache = blobStatusCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = blobStatusCache;
+                if (cache == null) {
+                    int maxSize = Integer.parseInt(
+                            Framework.getProperty(COLD_STORAGE_BLOB_STATUS_CACHE_MAX_SIZE_PROPERTY_NAME, "10000"));
+                    long ttl = Long.parseLong(
+                            Framework.getProperty(COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME, "600"));
+                    long ongoingRestoreTtl = Long.parseLong(Framework.getProperty(
+                            COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME, "60"));
+                    cache = new BlobStatusCache(maxSize, Duration.ofSeconds(ttl),
+                            Duration.ofSeconds(ongoingRestoreTtl));
+                    cache.start(Framework.getService(PubSubService.class));
+                    blobStatusCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public AvailabilityCheckSchedule getAvailabilityCheckSchedule() {
+        AvailabilityCheckSchedule schedule = availabilityCheckSchedule;
+        if (schedule == null) {
+            synchronized (this) {
+                schedule = availabilityCheckSchedule;
+                if (schedule == null) {
+                    long expectedDelay = Long.parseLong(
+                            Framework.getProperty(COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME, "10800"));
+                    long backoff = Long.parseLong(
+                            Framework.getProperty(COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME, "900"));
+                    long maxBackoff = Long.parseLong(
+                            Framework.getProperty(COLD_STORAGE_CHECK_RETRIEVE_MAX_BACKOFF_PROPERTY_NAME, "7200"));
+                    schedule = availabilityCheckSchedule = new AvailabilityCheckSchedule(getKeyValueStore(),
+                            Duration.ofSeconds(expectedDelay), Duration.ofSeconds(backoff),
+                            Duration.ofSeconds(maxBackoff));
+                }
+            }
+        }
+        return schedule;
+    }
+
+    @Override
+    public ClusterLease getAvailabilityCheckLease(int shard) {
+        return getClusterLease(CHECK_AVAILABILITY_LEASE_NAME + shard);
+    }
+
+    @Override
+    public ClusterLease getClusterLease(String name) {
+        return clusterLeases.computeIfAbsent(name, k -> {
+            long duration = Long.parseLong(
+                    Framework.getProperty(COLD_STORAGE_CHECK_RETRIEVE_LEASE_PROPERTY_NAME, "300"));
+            String nodeId = Framework.getService(ClusterService.class).getNodeId();
+            return new ClusterLease(getKeyValueStore(), k, nodeId, Duration.ofSeconds(duration));
+        });
+    }
+
+    @Override
+    public int getAvailabilityCheckShards() {
+        return Math.max(1,
+                Integer.parseInt(Framework.getProperty(COLD_STORAGE_CHECK_RETRIEVE_SHARDS_PROPERTY_NAME, "16")));
+    }
+
+    @Override
+    public ClusterMembership getClusterMembership() {
+        ClusterMembership membership = clusterMembership;
+        if (membership == null) {
+            synchronized (this) {
+                membership = clusterMembership;
+                if (membership == null) {
+                    // the heartbeat is recorded on each scheduled check, let it outlive one interval by a quarter of it
+                    Duration interval = getAvailabilityCheckInterval();
+                    long heartbeat = Long.parseLong(
+                            Framework.getProperty(COLD_STORAGE_CHECK_RETRIEVE_HEARTBEAT_PROPERTY_NAME,
+                                    String.valueOf(interval.plus(interval.dividedBy(4)).getSeconds())));
+                    String nodeId = Framework.getService(ClusterService.class).getNodeId();
+                    membership = clusterMembership = new ClusterMembership(getKeyValueStore(), nodeId,
+                            Duration.ofSeconds(heartbeat));
+                }
+            }
+        }
+        return membership;
+    }
+
+    /**
+     * Returns the longest interval between two upcoming runs of the scheduled check of the documents being retrieved,
+     * as defined by its cron expression, or one hour if it is not defined or invalid.
+     *
+     * @since 2021.4
+     */
+    protected Duration getAvailabilityCheckInterval() {
+        String cronExpression = Framework.getProperty(COLD_STORAGE_CHECK_RETRIEVE_CRON_PROPERTY_NAME);
+        long interval = 0;
+        if (cronExpression != null) {
+            try {
+                CronExpression cron = new CronExpression(cronExpression);
+                Date previous = cron.getNextValidTimeAfter(new Date());
+                for (int i = 0; i < CHECK_INTERVAL_SAMPLES && previous != null; i++) {
+                    Date next = cron.getNextValidTimeAfter(previous);
+                    if (next != null) {
+                        interval = Math.max(interval, next.getTime() - previous.getTime());
+                    }
+                    previous = next;
+                }
+            } catch (ParseException e) {
+                log.warn("Invalid cron expression: {} for the scheduled check of the documents being retrieved",
+                        cronExpression, e);
+            }
+        }
+        return interval > 0 ? Duration.ofMillis(interval) : Duration.ofHours(1);
+    }
+
+    @Override
+    public InFlightRetrievals getInFlightRetrievals() {
+        InFlightRetrievals retrievals = inFlightRetrievals;
+        if (retrievals == null) {
+            synchronized (this) {
+                retrievals = inFlightRetrievals;
+                if (retrievals == null) {
+                    KeyValueStore store = Framework.getService(KeyValueService.class)
+                                                   .getKeyValueStore(COLD_STORAGE_IN_FLIGHT_KEY_VALUE_STORE_NAME);
+                    retrievals = inFlightRetrievals = new InFlightRetrievals(store);
+                }
+            }
+        }
+        return retrievals;
+    }
+
+    @Override
+    public ColdDigestIndex getColdDigestIndex() {
+        ColdDigestIndex index = coldDigestIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = coldDigestIndex;
+                if (index == null) {
+                    long expectedSize = Long.parseLong(
+                            Framework.getProperty(COLD_STORAGE_COLD_DIGESTS_EXPECTED_SIZE_PROPERTY_NAME, "1000000"));
+                    index = new ColdDigestIndex(getKeyValueStore(), expectedSize);
+                    index.start(Framework.getService(PubSubService.class));
+                    coldDigestIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Records the transition of the given document from a state to another, as defined by
+     * {@link ColdStorageContentStatusCounters}.
+     *
+     * @since 2021.4
+     */
+    protected void recordTransition(CoreSession session, DocumentModel doc, int before, int after) {
+        getContentStatusCounters().recordTransition(session.getRepositoryName(), before, after);
+        Serializable coldContent = doc.hasFacet(COLD_STORAGE_FACET_NAME)
+                ? doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY)
+                : null;
+        String blobKey = coldContent instanceof ManagedBlob ? ((ManagedBlob) coldContent).getKey() : null;
+        getInFlightRetrievals().recordTransition(session.getRepositoryName(), doc.getId(), blobKey, before, after);
+    }
+
+    @Override
+    public RetrievalLedger getRetrievalLedger() {
+        RetrievalLedger ledger = retrievalLedger;
+        if (ledger == null) {
+            synchronized (this) {
+                ledger = retrievalLedger;
+                if (ledger == null) {
+                    ledger = retrievalLedger = new RetrievalLedger(getKeyValueStore());
+                }
+            }
+        }
+        return ledger;
+    }
+
+    @Override
+    public ColdStorageContentStatusCounters getContentStatusCounters() {
+        ColdStorageContentStatusCounters counters = contentStatusCounters;
+        if (counters == null) {
+            synchronized (this) {
+                counters = contentStatusCounters;
+                if (counters == null) {
+                    counters = contentStatusCounters = new ColdStorageContentStatusCounters(getKeyValueStore());
+                }
+            }
+        }
+        return counters;
+    }
+
+    @Override
+    public RetrievalTierPolicy getRetrievalTierPolicy() {
+        RetrievalTierPolicy policy = retrievalTierPolicy;
+        if (policy == null) {
+            synchronized (this) {
+                policy = retrievalTierPolicy;
+                if (policy == null) {
+                    RetrievalTier interactiveTier = RetrievalTier.parse(
+                            Framework.getProperty(COLD_STORAGE_RETRIEVE_TIER_INTERACTIVE_PROPERTY_NAME));
+                    RetrievalTier bulkTier = RetrievalTier.parse(
+                            Framework.getProperty(COLD_STORAGE_RETRIEVE_TIER_BULK_PROPERTY_NAME));
+                    long expeditedMaxSize = Long.parseLong(
+                            Framework.getProperty(COLD_STORAGE_RETRIEVE_TIER_EXPEDITED_MAX_SIZE_PROPERTY_NAME, "0"));
+                    policy = retrievalTierPolicy = new RetrievalTierPolicy(
+                            interactiveTier == null ? RetrievalTier.STANDARD : interactiveTier,
+                            bulkTier == null ? RetrievalTier.BULK : bulkTier, expeditedMaxSize);
+                }
+            }
+        }
+        return policy;
+    }
+
     @Override
     public Duration getAvailabilityDuration() {
         String value = Framework.getProperty(COLD_STORAGE_NUMBER_OF_DAYS_OF_AVAILABILITY_PROPERTY_NAME, "1");
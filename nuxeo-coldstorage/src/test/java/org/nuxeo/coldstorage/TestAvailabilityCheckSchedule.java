@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+/**
+ * @since 2021.4
+ */
+public class TestAvailabilityCheckSchedule {
+
+    protected final AtomicLong now = new AtomicLong(1_000_000L);
+
+    protected final AvailabilityCheckSchedule schedule = new AvailabilityCheckSchedule(new MemKeyValueStore(),
+            Duration.ofHours(3), Duration.ofMinutes(15), Duration.ofHours(1), now::get);
+
+    protected void elapse(Duration duration) {
+        now.addAndGet(duration.toMillis());
+    }
+
+    @Test
+    public void shouldBeDueWhenUnknown() {
+        assertTrue(schedule.isDue("doc"));
+    }
+
+    @Test
+    public void shouldNotBeDueBeforeExpectedDelay() {
+        schedule.scheduleFirstCheck("doc");
+        assertFalse(schedule.isDue("doc"));
+
+        elapse(Duration.ofHours(3).minusSeconds(1));
+        assertFalse(schedule.isDue("doc"));
+
+        elapse(Duration.ofSeconds(1));
+        assertTrue(schedule.isDue("doc"));
+    }
+
+    @Test
+    public void shouldBackoffExponentially() {
+        schedule.scheduleFirstCheck("doc");
+        elapse(Duration.ofHours(3));
+
+        // 15 min, 30 min, then capped to 1 hour
+        for (Duration backoff : new Duration[] { Duration.ofMinutes(15), Duration.ofMinutes(30), Duration.ofHours(1),
+                Duration.ofHours(1) }) {
+            schedule.scheduleNextCheck("doc");
+            elapse(backoff.minusSeconds(1));
+            assertFalse(schedule.isDue("doc"));
+            elapse(Duration.ofSeconds(1));
+            assertTrue(schedule.isDue("doc"));
+        }
+    }
+
+    @Test
+    public void shouldResetOnNewRetrieval() {
+        schedule.scheduleFirstCheck("doc");
+        schedule.scheduleNextCheck("doc");
+        schedule.scheduleNextCheck("doc");
+        schedule.remove("doc");
+        assertTrue(schedule.isDue("doc"));
+
+        schedule.scheduleFirstCheck("doc");
+        elapse(Duration.ofHours(3));
+        schedule.scheduleNextCheck("doc");
+        elapse(Duration.ofMinutes(15));
+        assertTrue(schedule.isDue("doc"));
+    }
+
+    @Test
+    public void shouldScaleDelaysWithTier() {
+        schedule.scheduleFirstCheck("expedited", RetrievalTier.EXPEDITED);
+        schedule.scheduleFirstCheck("bulk", RetrievalTier.BULK);
+
+        // 3 hours scaled down to 5 minutes for the expedited tier
+        elapse(Duration.ofMinutes(4));
+        assertFalse(schedule.isDue("expedited"));
+        elapse(Duration.ofMinutes(2));
+        assertTrue(schedule.isDue("expedited"));
+
+        // 3 hours scaled up to 12 hours for the bulk tier
+        elapse(Duration.ofHours(11));
+        assertFalse(schedule.isDue("bulk"));
+        elapse(Duration.ofHours(1));
+        assertTrue(schedule.isDue("bulk"));
+
+        // first backoff of 15 minutes scaled up to 1 hour
+        schedule.scheduleNextCheck("bulk", RetrievalTier.BULK);
+        elapse(Duration.ofMinutes(59));
+        assertFalse(schedule.isDue("bulk"));
+        elapse(Duration.ofMinutes(1));
+        assertTrue(schedule.isDue("bulk"));
+    }
+
+}
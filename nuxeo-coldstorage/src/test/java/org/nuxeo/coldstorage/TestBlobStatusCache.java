@@ -0,0 +1,138 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.blob.BlobStatus;
+
+/**
+ * @since 2021.4
+ */
+public class TestBlobStatusCache {
+
+    protected final AtomicLong now = new AtomicLong(1_000_000L);
+
+    protected BlobStatusCache newCache(int maxSize) {
+        return new BlobStatusCache(maxSize, Duration.ofMinutes(10), Duration.ofMinutes(1), now::get);
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+        BlobStatusCache cache = newCache(10);
+        BlobStatus standard = new BlobStatus().withDownloadable(true);
+
+        assertNull(cache.get("key"));
+        cache.put("key", standard);
+        assertSame(standard, cache.get("key"));
+        assertSame(standard, cache.get("key"));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldExpireOngoingRestoreSooner() {
+        BlobStatusCache cache = newCache(10);
+        cache.put("standard", new BlobStatus().withDownloadable(true));
+        cache.put("restoring", new BlobStatus().withStorageClass("GLACIER").withOngoingRestore(true));
+
+        now.addAndGet(Duration.ofMinutes(2).toMillis());
+        assertNull(cache.get("restoring"));
+        assertTrue(cache.get("standard").isDownloadable());
+
+        now.addAndGet(Duration.ofMinutes(10).toMillis());
+        assertNull(cache.get("standard"));
+    }
+
+    @Test
+    public void shouldCacheColdStatus() {
+        BlobStatusCache cache = newCache(10);
+        cache.put("cold", new BlobStatus().withStorageClass("GLACIER"));
+        assertFalse(cache.get("cold").isDownloadable());
+        now.addAndGet(Duration.ofSeconds(601).toMillis());
+        assertNull(cache.get("cold"));
+
+        // the status of a blob retrieved from cold storage is stable until its availability ends
+        Instant downloadableUntil = Instant.ofEpochMilli(now.get()).plusSeconds(3600);
+        cache.put("retrieved",
+                new BlobStatus().withStorageClass("GLACIER").withDownloadable(true).withDownloadableUntil(
+                        downloadableUntil));
+        assertTrue(cache.get("retrieved").isDownloadable());
+    }
+
+    @Test
+    public void shouldNotKeepRetrievedStatusBeyondDownloadableUntil() {
+        BlobStatusCache cache = newCache(10);
+        Instant downloadableUntil = Instant.ofEpochMilli(now.get()).plusSeconds(30);
+        cache.put("retrieved", new BlobStatus().withDownloadable(true).withDownloadableUntil(downloadableUntil));
+
+        now.addAndGet(Duration.ofSeconds(31).toMillis());
+        assertNull(cache.get("retrieved"));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        BlobStatusCache cache = newCache(2);
+        cache.put("key1", new BlobStatus());
+        cache.put("key2", new BlobStatus());
+        cache.get("key1");
+        cache.put("key3", new BlobStatus());
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("key2"));
+    }
+
+    @Test
+    public void shouldInvalidate() {
+        BlobStatusCache cache = newCache(10);
+        cache.put("key", new BlobStatus());
+        cache.invalidate("key");
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void shouldInvalidateFromOtherNode() {
+        BlobStatusCache cache = newCache(10);
+        cache.put("key", new BlobStatus());
+        // the blob was updated on another node
+        cache.onInvalidated(BlobStatusCache.TOPIC, "key".getBytes(UTF_8));
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void shouldBeDisabledWithoutTtl() {
+        BlobStatusCache cache = new BlobStatusCache(10, Duration.ZERO, Duration.ZERO, now::get);
+        assertFalse(cache.isEnabled());
+        cache.put("key", new BlobStatus());
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+    }
+
+}
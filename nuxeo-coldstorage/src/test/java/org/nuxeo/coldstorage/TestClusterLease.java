@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.Test;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+/**
+ * @since 2021.4
+ */
+public class TestClusterLease {
+
+    protected final KeyValueStore store = new MemKeyValueStore();
+
+    protected ClusterLease lease(String nodeId) {
+        return new ClusterLease(store, "test", nodeId, Duration.ofMinutes(5));
+    }
+
+    @Test
+    public void shouldBeHeldByOneNode() {
+        ClusterLease lease1 = lease("node1");
+        ClusterLease lease2 = lease("node2");
+        assertNull(lease1.getHolder());
+
+        assertTrue(lease1.acquire());
+        assertFalse(lease2.acquire());
+        assertEquals("node1", lease2.getHolder());
+
+        // renewed by its holder
+        assertTrue(lease1.acquire());
+        assertFalse(lease2.acquire());
+    }
+
+    @Test
+    public void shouldBeTakenOverOnceReleased() {
+        ClusterLease lease1 = lease("node1");
+        ClusterLease lease2 = lease("node2");
+        assertTrue(lease1.acquire());
+
+        // not released by another node
+        lease2.release();
+        assertEquals("node1", lease2.getHolder());
+
+        lease1.release();
+        assertTrue(lease2.acquire());
+        assertFalse(lease1.acquire());
+        assertEquals("node2", lease1.getHolder());
+    }
+
+    @Test
+    public void shouldBeTakenOverOnceExpired() throws InterruptedException {
+        ClusterLease lease1 = new ClusterLease(store, "test", "node1", Duration.ofSeconds(1));
+        ClusterLease lease2 = lease("node2");
+        assertTrue(lease1.acquire());
+        assertFalse(lease2.acquire());
+
+        // the holder died
+        Thread.sleep(1_500);
+        assertTrue(lease2.acquire());
+    }
+
+}
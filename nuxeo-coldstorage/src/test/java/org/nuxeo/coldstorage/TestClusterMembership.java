@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+/**
+ * @since 2021.4
+ */
+public class TestClusterMembership {
+
+    protected final KeyValueStore store = new MemKeyValueStore();
+
+    protected ClusterMembership member(String nodeId) {
+        return new ClusterMembership(store, nodeId, Duration.ofMinutes(5));
+    }
+
+    @Test
+    public void shouldDistributeShardsOverNodes() {
+        ClusterMembership node1 = member("node1");
+        ClusterMembership node2 = member("node2");
+        ClusterMembership node3 = member("node3");
+        node1.join();
+        node2.join();
+        node3.join();
+        assertEquals(List.of("node1", "node2", "node3"), node1.getNodes());
+
+        assertEquals(List.of(0, 3, 6), node1.getAssignedShards(8));
+        assertEquals(List.of(1, 4, 7), node2.getAssignedShards(8));
+        assertEquals(List.of(2, 5), node3.getAssignedShards(8));
+    }
+
+    @Test
+    public void shouldRebalanceShards() {
+        ClusterMembership node1 = member("node1");
+        ClusterMembership node2 = member("node2");
+        node1.join();
+        assertEquals(List.of(0, 1, 2, 3), node1.getAssignedShards(4));
+
+        node2.join();
+        assertEquals(List.of(0, 2), node1.getAssignedShards(4));
+        assertEquals(List.of(1, 3), node2.getAssignedShards(4));
+
+        node1.leave();
+        assertEquals(List.of("node2"), node2.getNodes());
+        assertEquals(List.of(0, 1, 2, 3), node2.getAssignedShards(4));
+    }
+
+    @Test
+    public void shouldAssignEachShardOnce() {
+        List<ClusterMembership> nodes = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ClusterMembership node = member("node" + i);
+            node.join();
+            nodes.add(node);
+        }
+        List<Integer> shards = new ArrayList<>();
+        nodes.forEach(node -> shards.addAll(node.getAssignedShards(16)));
+        shards.sort(null);
+        assertEquals(16, shards.size());
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, (int) shards.get(i));
+        }
+        assertTrue(nodes.get(0).getAssignedShards(16).size() <= 3);
+    }
+
+}
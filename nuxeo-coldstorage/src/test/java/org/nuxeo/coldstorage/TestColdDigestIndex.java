@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+/**
+ * @since 2021.4
+ */
+public class TestColdDigestIndex {
+
+    protected final MemKeyValueStore store = new MemKeyValueStore();
+
+    protected final ColdDigestIndex index = new ColdDigestIndex(store, 1000);
+
+    @Test
+    public void shouldConsiderAnyDigestUntilReconciled() {
+        assertTrue(index.mightBeCold("test", "digest"));
+
+        assertEquals(1, index.reconcile("test", List.of("cold")));
+        assertTrue(index.mightBeCold("test", "cold"));
+        assertFalse(index.mightBeCold("test", "digest"));
+        // other repositories are not reconciled yet
+        assertTrue(index.mightBeCold("other", "digest"));
+        // digests already in the set are not added again
+        assertEquals(0, index.reconcile("test", Set.of("cold")));
+    }
+
+    @Test
+    public void shouldTrackMovesAndRestores() {
+        index.reconcile("test", List.of());
+        index.recordMove("digest1");
+        index.recordMove("digest2");
+        assertTrue(index.mightBeCold("test", "digest1"));
+        assertTrue(index.mightBeCold("test", "digest2"));
+
+        index.recordRestore("digest1");
+        assertFalse(index.mightBeCold("test", "digest1"));
+        assertTrue(index.mightBeCold("test", "digest2"));
+    }
+
+    @Test
+    public void shouldLoadFromStore() {
+        index.reconcile("test", List.of("digest1", "digest2"));
+
+        // another node
+        ColdDigestIndex other = new ColdDigestIndex(store, 1000);
+        assertFalse(other.mightBeCold("test", "digest1"));
+        other.load();
+        assertTrue(other.mightBeCold("test", "digest1"));
+        assertTrue(other.mightBeCold("test", "digest2"));
+        assertFalse(other.mightBeCold("test", "digest3"));
+    }
+
+    @Test
+    public void shouldNotGiveFalseNegatives() {
+        ColdDigestBloomFilter filter = new ColdDigestBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("digest" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("digest" + i));
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 300);
+        assertFalse(filter.isOffHeap());
+    }
+
+    @Test
+    public void shouldHoldLargeFilterOffHeap() {
+        ColdDigestBloomFilter filter = new ColdDigestBloomFilter(10_000_000, 0.01);
+        assertTrue(filter.isOffHeap());
+        filter.put("digest");
+        assertTrue(filter.mightContain("digest"));
+        assertFalse(filter.mightContain("other"));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.nuxeo.coldstorage.ColdStorageContentStatusCounters.STATE_AVAILABLE;
+import static org.nuxeo.coldstorage.ColdStorageContentStatusCounters.STATE_BEING_RETRIEVED;
+import static org.nuxeo.coldstorage.ColdStorageContentStatusCounters.STATE_NONE;
+
+import org.junit.Test;
+import org.nuxeo.coldstorage.ColdStorageConstants.ColdStorageContentStatus;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+/**
+ * @since 2021.4
+ */
+public class TestColdStorageContentStatusCounters {
+
+    protected final ColdStorageContentStatusCounters counters = new ColdStorageContentStatusCounters(
+            new MemKeyValueStore());
+
+    protected void assertStatus(String repository, int beingRetrieved, int available) {
+        ColdStorageContentStatus status = counters.getStatus(repository);
+        assertEquals(beingRetrieved, status.getTotalBeingRetrieved());
+        assertEquals(available, status.getTotalAvailable());
+    }
+
+    @Test
+    public void shouldBeEmptyWhenUnknown() {
+        assertStatus("test", 0, 0);
+    }
+
+    @Test
+    public void shouldCountTransitions() {
+        // two retrievals requested
+        counters.recordTransition("test", STATE_NONE, STATE_BEING_RETRIEVED);
+        counters.recordTransition("test", STATE_NONE, STATE_BEING_RETRIEVED);
+        assertStatus("test", 2, 0);
+
+        // one completed
+        counters.recordTransition("test", STATE_BEING_RETRIEVED, STATE_AVAILABLE);
+        assertStatus("test", 1, 1);
+
+        // then restored
+        counters.recordTransition("test", STATE_AVAILABLE, STATE_NONE);
+        assertStatus("test", 1, 0);
+
+        // no transition
+        counters.recordTransition("test", STATE_BEING_RETRIEVED, STATE_BEING_RETRIEVED);
+        assertStatus("test", 1, 0);
+    }
+
+    @Test
+    public void shouldCountPerRepository() {
+        counters.recordTransition("test", STATE_NONE, STATE_BEING_RETRIEVED);
+        counters.recordTransition("other", STATE_NONE, STATE_AVAILABLE);
+        assertStatus("test", 1, 0);
+        assertStatus("other", 0, 1);
+    }
+
+    @Test
+    public void shouldReset() {
+        // a document being retrieved before the counters existed
+        counters.recordTransition("test", STATE_BEING_RETRIEVED, STATE_AVAILABLE);
+        assertStatus("test", 0, 1);
+
+        counters.reset("test", 3, 2);
+        assertStatus("test", 3, 2);
+
+        counters.recordTransition("test", STATE_BEING_RETRIEVED, STATE_NONE);
+        assertStatus("test", 2, 2);
+    }
+
+}
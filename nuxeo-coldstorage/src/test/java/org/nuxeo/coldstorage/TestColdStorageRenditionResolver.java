@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @since 2021.4
+ */
+public class TestColdStorageRenditionResolver {
+
+    protected static ColdStorageRenditionDescriptor descriptor(String name, String docType, String facet,
+            String renditionName) {
+        ColdStorageRenditionDescriptor descriptor = new ColdStorageRenditionDescriptor();
+        descriptor.name = name;
+        descriptor.docType = docType;
+        descriptor.facet = facet;
+        descriptor.renditionName = renditionName;
+        return descriptor;
+    }
+
+    protected static List<ColdStorageRenditionDescriptor> defaultDescriptors() {
+        List<ColdStorageRenditionDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(descriptor("defaultRendition", null, null, "thumbnail"));
+        descriptors.add(descriptor("pictureRendition", "Picture", "Picture", "Small"));
+        descriptors.add(descriptor("videoRendition", "Video", "Video", "MP4 480p"));
+        return descriptors;
+    }
+
+    @Test
+    public void shouldResolveByTypeThenFacetThenDefault() {
+        ColdStorageRenditionResolver resolver = new ColdStorageRenditionResolver(defaultDescriptors());
+        assertEquals("Small", resolver.resolve("Picture", Set.of(), null, -1));
+        assertEquals("MP4 480p", resolver.resolve("File", Set.of("Video"), null, -1));
+        // the type wins over the facet
+        assertEquals("Small", resolver.resolve("Picture", Set.of("Video"), null, -1));
+        assertEquals("thumbnail", resolver.resolve("File", Set.of("Downloadable"), "image/png", 10));
+    }
+
+    @Test
+    public void shouldResolveWithoutDefault() {
+        ColdStorageRenditionResolver resolver = new ColdStorageRenditionResolver(
+                List.of(descriptor("pictureRendition", "Picture", null, "Small")));
+        assertNull(resolver.resolve("File", Set.of(), null, -1));
+    }
+
+    @Test
+    public void shouldResolveOnMainContent() {
+        List<ColdStorageRenditionDescriptor> descriptors = defaultDescriptors();
+        ColdStorageRenditionDescriptor largeImages = descriptor("largeImages", null, null, "Medium");
+        largeImages.mimeType = "image/*";
+        largeImages.minSize = 1000L;
+        descriptors.add(largeImages);
+        ColdStorageRenditionDescriptor smallPdfs = descriptor("smallPdfs", "File", null, "pdf");
+        smallPdfs.mimeType = "application/pdf";
+        smallPdfs.maxSize = 1000L;
+        descriptors.add(smallPdfs);
+        ColdStorageRenditionResolver resolver = new ColdStorageRenditionResolver(descriptors);
+
+        assertEquals("Medium", resolver.resolve("File", Set.of(), "image/PNG", 1000));
+        assertEquals("thumbnail", resolver.resolve("File", Set.of(), "image/png", 999));
+        assertEquals("thumbnail", resolver.resolve("File", Set.of(), "image/png", -1));
+        assertEquals("pdf", resolver.resolve("File", Set.of(), "application/pdf", 999));
+        assertEquals("thumbnail", resolver.resolve("File", Set.of(), "application/pdf", 1000));
+        // rules on the type come first
+        assertEquals("Small", resolver.resolve("Picture", Set.of(), "image/png", 2000));
+    }
+
+    @Test
+    public void shouldResolveByPriority() {
+        List<ColdStorageRenditionDescriptor> descriptors = defaultDescriptors();
+        ColdStorageRenditionDescriptor largeImages = descriptor("largeImages", null, null, "Medium");
+        largeImages.mimeType = "image/*";
+        largeImages.minSize = 1000L;
+        largeImages.priority = 10;
+        descriptors.add(largeImages);
+        ColdStorageRenditionResolver resolver = new ColdStorageRenditionResolver(descriptors);
+
+        assertEquals("Medium", resolver.resolve("Picture", Set.of(), "image/png", 2000));
+        assertEquals("Small", resolver.resolve("Picture", Set.of(), "image/png", 20));
+    }
+
+    @Test
+    public void shouldBeDeterministic() {
+        List<ColdStorageRenditionDescriptor> descriptors = defaultDescriptors();
+        descriptors.add(descriptor("anotherPictureRendition", null, "Picture", "Medium"));
+        List<String> expected = new ColdStorageRenditionResolver(descriptors).getRuleNames();
+        for (int i = 0; i < 10; i++) {
+            Collections.shuffle(descriptors);
+            ColdStorageRenditionResolver resolver = new ColdStorageRenditionResolver(descriptors);
+            assertEquals(expected, resolver.getRuleNames());
+            // rules on the same facet are sorted by name
+            assertEquals("Medium", resolver.resolve("File", Set.of("Picture"), null, -1));
+        }
+    }
+
+}
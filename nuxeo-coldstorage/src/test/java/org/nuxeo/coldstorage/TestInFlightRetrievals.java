@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.coldstorage.ColdStorageContentStatusCounters.STATE_AVAILABLE;
+import static org.nuxeo.coldstorage.ColdStorageContentStatusCounters.STATE_BEING_RETRIEVED;
+import static org.nuxeo.coldstorage.ColdStorageContentStatusCounters.STATE_NONE;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+/**
+ * @since 2021.4
+ */
+public class TestInFlightRetrievals {
+
+    protected final InFlightRetrievals retrievals = new InFlightRetrievals(new MemKeyValueStore());
+
+    @Test
+    public void shouldTrackDocumentsBeingRetrieved() {
+        assertTrue(retrievals.getDocumentIds("test").isEmpty());
+
+        retrievals.recordTransition("test", "doc1", "key1", STATE_NONE, STATE_BEING_RETRIEVED);
+        retrievals.recordTransition("test", "doc2", "key2", STATE_AVAILABLE, STATE_BEING_RETRIEVED);
+        retrievals.recordTransition("other", "doc3", "key3", STATE_NONE, STATE_BEING_RETRIEVED);
+        assertEquals(Set.of("doc1", "doc2"), Set.copyOf(retrievals.getDocumentIds("test")));
+        assertEquals(Map.of("doc1", "key1", "doc2", "key2"), retrievals.getDocuments("test"));
+        assertEquals(List.of("doc3"), retrievals.getDocumentIds("other"));
+
+        retrievals.recordTransition("test", "doc1", "key1", STATE_BEING_RETRIEVED, STATE_AVAILABLE);
+        retrievals.recordTransition("test", "doc2", "key2", STATE_BEING_RETRIEVED, STATE_NONE);
+        assertTrue(retrievals.getDocumentIds("test").isEmpty());
+        assertEquals(List.of("doc3"), retrievals.getDocumentIds("other"));
+    }
+
+    @Test
+    public void shouldIgnoreOtherTransitions() {
+        retrievals.recordTransition("test", "doc", "key", STATE_NONE, STATE_AVAILABLE);
+        retrievals.recordTransition("test", "doc", "key", STATE_AVAILABLE, STATE_NONE);
+        retrievals.recordTransition("test", "doc", "key", STATE_BEING_RETRIEVED, STATE_BEING_RETRIEVED);
+        assertTrue(retrievals.getDocumentIds("test").isEmpty());
+    }
+
+    @Test
+    public void shouldShardByBlobKey() {
+        for (int i = 0; i < 100; i++) {
+            int shard = InFlightRetrievals.getShard("key" + i, 16);
+            assertTrue(shard >= 0 && shard < 16);
+            assertEquals(shard, InFlightRetrievals.getShard("key" + i, 16));
+        }
+        assertEquals(0, InFlightRetrievals.getShard("key", 1));
+    }
+
+    @Test
+    public void shouldReset() {
+        retrievals.recordTransition("test", "doc1", "key1", STATE_NONE, STATE_BEING_RETRIEVED);
+        retrievals.recordTransition("test", "doc2", "key2", STATE_NONE, STATE_BEING_RETRIEVED);
+        retrievals.recordTransition("other", "doc3", "key3", STATE_NONE, STATE_BEING_RETRIEVED);
+
+        // doc1 drifted, doc4 was missed, doc2 references another blob
+        assertEquals(3, retrievals.reset("test", Map.of("doc2", "key5", "doc4", "key4")));
+        assertEquals(Map.of("doc2", "key5", "doc4", "key4"), retrievals.getDocuments("test"));
+        assertEquals(List.of("doc3"), retrievals.getDocumentIds("other"));
+
+        assertEquals(0, retrievals.reset("test", Map.of("doc2", "key5", "doc4", "key4")));
+    }
+
+    @Test
+    public void shouldBeReconciledOnceReset() {
+        assertFalse(retrievals.isReconciled("test"));
+        retrievals.recordTransition("test", "doc1", "key1", STATE_NONE, STATE_BEING_RETRIEVED);
+        assertFalse(retrievals.isReconciled("test"));
+        retrievals.reset("test", Map.of());
+        assertTrue(retrievals.isReconciled("test"));
+        assertFalse(retrievals.isReconciled("other"));
+        // the marker is not listed as a document
+        assertTrue(retrievals.getDocumentIds("test").isEmpty());
+    }
+
+}
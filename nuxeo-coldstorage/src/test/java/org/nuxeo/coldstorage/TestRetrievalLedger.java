@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.nuxeo.coldstorage.RetrievalLedger.Entry;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+/**
+ * @since 2021.4
+ */
+public class TestRetrievalLedger {
+
+    protected static final Duration TTL = Duration.ofDays(1);
+
+    protected final AtomicLong now = new AtomicLong(1_000_000L);
+
+    protected final MemKeyValueStore store = new MemKeyValueStore();
+
+    protected final RetrievalLedger ledger = new RetrievalLedger(store, now::get);
+
+    @Test
+    public void shouldRequestRestoreOnce() {
+        assertNull(ledger.request("key", RetrievalTier.BULK, "default/doc1", "john", TTL));
+        now.addAndGet(1000);
+        Entry entry = ledger.request("key", RetrievalTier.EXPEDITED, "default/doc2", "jane", TTL);
+        assertNotNull(entry);
+        // the tier of the first request holds
+        assertEquals(RetrievalTier.BULK, entry.getRetrievalTier());
+        assertEquals(1_000_000L, entry.requestedAt);
+        assertFalse(entry.isCompleted());
+
+        assertEquals(Map.of("default/doc1", "john", "default/doc2", "jane"), ledger.getWaitingDocuments("key"));
+    }
+
+    @Test
+    public void shouldJoinRestoreWithManyDocuments() {
+        int nbDocs = 1000;
+        for (int i = 0; i < nbDocs; i++) {
+            ledger.request("key", RetrievalTier.STANDARD, Entry.document("default", "doc" + i), "john", TTL);
+        }
+        // the entry itself doesn't grow with the waiting documents
+        assertTrue(store.getString(RetrievalLedger.PREFIX + "key").length() < 200);
+        assertEquals(nbDocs, ledger.getWaitingDocuments("key").size());
+        assertEquals(nbDocs, ledger.complete("key", "default").documents.size());
+        assertEquals(Map.of(), ledger.getWaitingDocuments("key"));
+    }
+
+    @Test
+    public void shouldCompleteRestorePerRepository() {
+        ledger.request("key", RetrievalTier.STANDARD, Entry.document("default", "doc1"), "john", TTL);
+        ledger.request("key", RetrievalTier.STANDARD, Entry.document("default", "doc2"), "john", TTL);
+        ledger.request("key", RetrievalTier.STANDARD, Entry.document("other", "doc3"), "jane", TTL);
+        assertNull(ledger.complete("unknown", "default"));
+
+        now.addAndGet(1000);
+        Entry completed = ledger.complete("key", "default");
+        assertTrue(completed.isCompleted());
+        assertEquals(1_001_000L, completed.completedAt);
+        assertEquals(Set.of("default/doc1", "default/doc2"), completed.documents);
+
+        // the documents of the other repository are still waiting
+        Entry entry = ledger.get("key");
+        assertTrue(entry.isCompleted());
+        assertEquals(1_001_000L, entry.completedAt);
+        assertEquals(Set.of("other/doc3"), ledger.getWaitingDocuments("key").keySet());
+        assertEquals(Set.of(), ledger.complete("key", "default").documents);
+    }
+
+    @Test
+    public void shouldRemoveEntry() {
+        ledger.request("key", RetrievalTier.STANDARD, "default/doc1", "john", TTL);
+        ledger.remove("key");
+        assertNull(ledger.get("key"));
+        assertEquals(Map.of(), ledger.getWaitingDocuments("key"));
+        assertNull(ledger.request("key", RetrievalTier.STANDARD, "default/doc1", "john", TTL));
+    }
+
+}
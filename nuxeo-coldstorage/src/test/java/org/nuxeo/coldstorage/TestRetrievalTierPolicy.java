@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * @since 2021.4
+ */
+public class TestRetrievalTierPolicy {
+
+    @Test
+    public void shouldParseTier() {
+        assertNull(RetrievalTier.parse(null));
+        assertNull(RetrievalTier.parse(" "));
+        assertEquals(RetrievalTier.EXPEDITED, RetrievalTier.parse("Expedited"));
+        assertEquals(RetrievalTier.BULK, RetrievalTier.parse("bulk"));
+        try {
+            RetrievalTier.parse("Fast");
+            fail("Should fail because the tier doesn't exist");
+        } catch (NuxeoException e) {
+            assertEquals(SC_BAD_REQUEST, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void shouldChooseTier() {
+        RetrievalTierPolicy policy = new RetrievalTierPolicy(RetrievalTier.STANDARD, RetrievalTier.BULK, 1024);
+        assertEquals(RetrievalTier.EXPEDITED, policy.choose(0, true));
+        assertEquals(RetrievalTier.EXPEDITED, policy.choose(1024, true));
+        assertEquals(RetrievalTier.STANDARD, policy.choose(1025, true));
+        // unknown length
+        assertEquals(RetrievalTier.STANDARD, policy.choose(-1, true));
+        assertEquals(RetrievalTier.BULK, policy.choose(10, false));
+    }
+
+    @Test
+    public void shouldNotChooseExpeditedWhenDisabled() {
+        RetrievalTierPolicy policy = new RetrievalTierPolicy(RetrievalTier.STANDARD, RetrievalTier.BULK, 0);
+        assertEquals(RetrievalTier.STANDARD, policy.choose(10, true));
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * (C) Copyright 2023 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Guillaume Renard<grenard@nuxeo.com>
+ */
+package org.nuxeo.coldstorage.action;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @since 2021.4
+ */
+public class TestRestoreCompletedAction {
+
+    protected static final String S3_NOTIFICATION = "{\"Records\":[" //
+            + "{\"eventName\":\"ObjectRestore:Post\",\"s3\":{\"object\":{\"key\":\"prefix/initiated\"}}}," //
+            + "{\"eventName\":\"ObjectRestore:Completed\",\"s3\":{\"object\":{\"key\":\"prefix/completed\"}}}," //
+            + "{\"eventName\":\"ObjectRestore:Completed\",\"s3\":{\"object\":{\"key\":\"with%3Acolon\"}}}" //
+            + "]}";
+
+    @Test
+    public void shouldParseBlobKey() {
+        assertEquals(List.of("1234"), RestoreCompletedAction.parseKeys("1234".getBytes(UTF_8)));
+        assertEquals(List.of("1234"), RestoreCompletedAction.parseKeys("test:1234".getBytes(UTF_8)));
+        assertEquals(List.of("1234"), RestoreCompletedAction.parseKeys(" prefix/1234\n".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void shouldParseS3RestoreCompletedNotification() {
+        assertEquals(List.of("completed", "colon"),
+                RestoreCompletedAction.parseKeys(S3_NOTIFICATION.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void shouldIgnoreEmptyOrInvalidRecord() {
+        assertTrue(RestoreCompletedAction.parseKeys(null).isEmpty());
+        assertTrue(RestoreCompletedAction.parseKeys(new byte[0]).isEmpty());
+        assertTrue(RestoreCompletedAction.parseKeys("{\"Records\":".getBytes(UTF_8)).isEmpty());
+    }
+
+}
@@ -22,6 +22,11 @@ package org.nuxeo.coldstorage.operations;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -52,6 +57,7 @@ import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
 import org.nuxeo.runtime.test.runner.TransactionalFeature;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
 
 /**
  * @since 2021.0.0
@@ -60,6 +66,14 @@ import org.nuxeo.runtime.test.runner.TransactionalFeature;
 @Features(ColdStorageFeature.class)
 @Deploy("org.nuxeo.ecm.automation.core")
 @Deploy("org.nuxeo.ecm.automation.features")
+// blob statuses are tweaked or evolve during tests, don't cache them
+@WithFrameworkProperty(name = COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME, value = "0")
+@WithFrameworkProperty(name = COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME, value = "0")
+// availability checks are expected to be done right away
+@WithFrameworkProperty(name = COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME, value = "0")
+@WithFrameworkProperty(name = COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME, value = "0")
+// documents referencing a blob already in cold storage are expected to be moved right away
+@WithFrameworkProperty(name = COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME, value = "true")
 public abstract class AbstractTestColdStorageOperation {
 
     protected static final String FILE_CONTENT = "foo and boo";
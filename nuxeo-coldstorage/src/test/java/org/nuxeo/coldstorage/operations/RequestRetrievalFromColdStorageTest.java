@@ -19,6 +19,7 @@
 
 package org.nuxeo.coldstorage.operations;
 
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static org.junit.Assert.assertEquals;
@@ -104,6 +105,34 @@ public class RequestRetrievalFromColdStorageTest extends AbstractTestColdStorage
         requestRetrievalContentFromColdStorage(documentModel, session);
     }
 
+    @Test
+    public void shouldRequestRetrievalWithTier() throws OperationException, IOException {
+        DocumentModel documentModel = createFileDocument(session, true);
+        documentModel = moveContentToColdStorage(session, documentModel);
+        try (OperationContext context = new OperationContext(session)) {
+            context.setInput(documentModel);
+            DocumentModel updatedDocument = (DocumentModel) automationService.run(context,
+                    RequestRetrievalFromColdStorage.ID, Map.of("tier", "Bulk"));
+            assertEquals(Boolean.TRUE,
+                    updatedDocument.getPropertyValue(ColdStorageConstants.COLD_STORAGE_BEING_RETRIEVED_PROPERTY));
+            assertEquals("BULK",
+                    updatedDocument.getPropertyValue(ColdStorageConstants.COLD_STORAGE_RETRIEVAL_TIER_PROPERTY));
+        }
+    }
+
+    @Test
+    public void shouldFailRequestRetrievalUnknownTier() throws OperationException, IOException {
+        DocumentModel documentModel = createFileDocument(session, true);
+        documentModel = moveContentToColdStorage(session, documentModel);
+        try (OperationContext context = new OperationContext(session)) {
+            context.setInput(documentModel);
+            automationService.run(context, RequestRetrievalFromColdStorage.ID, Map.of("tier", "Fast"));
+            fail("Should fail because the retrieval tier doesn't exist.");
+        } catch (NuxeoException e) {
+            assertEquals(SC_BAD_REQUEST, e.getStatusCode());
+        }
+    }
+
     @Test
     public void shouldFailRequestRetrievalBeingRetrieved() throws IOException, OperationException {
         DocumentModel documentModel = createFileDocument(session, true);
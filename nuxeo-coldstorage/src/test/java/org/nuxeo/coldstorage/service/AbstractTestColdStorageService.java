@@ -29,6 +29,11 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BEING_RETRIEVED_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPERTY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_FACET_NAME;
@@ -75,11 +80,20 @@ import org.nuxeo.ecm.core.test.StorageConfiguration;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
 import org.nuxeo.runtime.test.runner.TransactionalFeature;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
 
 /**
  * @since 2021.0.0
  */
 @RunWith(FeaturesRunner.class)
+// blob statuses are tweaked or evolve during tests, don't cache them
+@WithFrameworkProperty(name = COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME, value = "0")
+@WithFrameworkProperty(name = COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME, value = "0")
+// availability checks are expected to be done right away
+@WithFrameworkProperty(name = COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME, value = "0")
+@WithFrameworkProperty(name = COLD_STORAGE_CHECK_RETRIEVE_BACKOFF_PROPERTY_NAME, value = "0")
+// documents referencing a blob already in cold storage are expected to be moved right away
+@WithFrameworkProperty(name = COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME, value = "true")
 public abstract class AbstractTestColdStorageService {
 
     protected static final String FILE_CONTENT = "foo";
@@ -19,21 +19,45 @@
 
 package org.nuxeo.coldstorage.service;
 
+import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BEING_RETRIEVED_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_BULK_SAVE_BATCH_SIZE_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_CONTENT_AVAILABILITY_EVENT_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_CRON_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_ARCHIVE_LOCATION_MAIL_TEMPLATE_KEY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_AVAILABLE_EVENT_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_AVAILABLE_UNTIL_MAIL_TEMPLATE_KEY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_DOWNLOAD_EVENT_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_EXPIRED_EVENT_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_MOVED_EVENT_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME;
 import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_CONTENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_FACET_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PLACEHOLDER_ASYNC_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PLACEHOLDER_REUSE_STORED_BLOBS_PROPERTY_NAME;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PROPAGATED_ACTION_EVENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PROPAGATED_DIGESTS_EVENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_PROPAGATED_DOCUMENTS_EVENT_PROPERTY;
+import static org.nuxeo.coldstorage.ColdStorageConstants.COLD_STORAGE_RETRIEVAL_TIER_PROPERTY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.FILE_CONTENT_PROPERTY;
 import static org.nuxeo.coldstorage.ColdStorageConstants.GET_DOCUMENTS_TO_CHECK_QUERY;
+import static org.nuxeo.ecm.core.DummyThumbnailFactory.DUMMY_THUMBNAIL_CONTENT;
+import static org.nuxeo.ecm.core.api.event.DocumentEventTypes.BEFORE_DOC_UPDATE;
+import static org.nuxeo.ecm.core.api.event.DocumentEventTypes.DOCUMENT_UPDATED;
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.READ;
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.WRITE;
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.WRITE_COLD_STORAGE;
@@ -41,6 +65,7 @@ import static org.nuxeo.ecm.core.api.versioning.VersioningService.VERSIONING_OPT
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -49,6 +74,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -59,9 +85,21 @@ import org.apache.commons.lang3.time.DateUtils;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.LogEvent;
 import org.junit.Test;
+import org.nuxeo.coldstorage.BlobStatusCache;
+import org.nuxeo.coldstorage.ColdDigestIndex;
+import org.nuxeo.coldstorage.ColdStorageConstants.ColdStorageContentStatus;
+import org.nuxeo.coldstorage.ColdStorageContentStatusCounters;
 import org.nuxeo.coldstorage.ColdStorageHelper;
+import org.nuxeo.coldstorage.ColdStorageMetrics;
 import org.nuxeo.coldstorage.DummyColdStorageFeature;
+import org.nuxeo.coldstorage.InFlightRetrievals;
+import org.nuxeo.coldstorage.RetrievalLedger;
+import org.nuxeo.coldstorage.RetrievalTier;
 import org.nuxeo.coldstorage.action.MoveToColdStorageContentAction;
+import org.nuxeo.coldstorage.action.PropagateMoveToColdStorageContentAction;
+import org.nuxeo.coldstorage.action.PropagateRestoreFromColdStorageContentAction;
+import org.nuxeo.coldstorage.action.RequestRetrievalFromColdStorageAction;
+import org.nuxeo.coldstorage.events.PreventColdStorageUpdateListener;
 import org.nuxeo.ecm.core.DummyBlobProvider;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.Blobs;
@@ -69,6 +107,7 @@ import org.nuxeo.ecm.core.api.CoreInstance;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.VersioningOption;
 import org.nuxeo.ecm.core.api.event.CoreEventConstants;
 import org.nuxeo.ecm.core.api.security.ACE;
@@ -82,17 +121,29 @@ import org.nuxeo.ecm.core.bulk.BulkService;
 import org.nuxeo.ecm.core.bulk.message.BulkCommand;
 import org.nuxeo.ecm.core.bulk.message.BulkStatus;
 import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventContext;
 import org.nuxeo.ecm.core.event.EventService;
 import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
 import org.nuxeo.ecm.core.event.impl.EventContextImpl;
 import org.nuxeo.ecm.core.event.test.CapturingEventListener;
 import org.nuxeo.ecm.core.io.download.DownloadService;
 import org.nuxeo.ecm.platform.ec.notification.service.NotificationServiceHelper;
+import org.nuxeo.ecm.platform.thumbnail.ThumbnailConstants;
 import org.nuxeo.lib.stream.computation.AbstractComputation;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.LogCaptureFeature;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Histogram;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
 
 @Features(DummyColdStorageFeature.class)
 public class TestDummyColdStorageService extends AbstractTestColdStorageService {
@@ -141,6 +192,70 @@ public class TestDummyColdStorageService extends AbstractTestColdStorageService
         }
     }
 
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_BULK_SAVE_BATCH_SIZE_PROPERTY_NAME, value = "3")
+    public void shouldSaveMovedDocumentsInBatches() throws IOException {
+        final String fileContent = FILE_CONTENT + System.nanoTime();
+        List<DocumentModel> docs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            docs.add(createFileDocument(DEFAULT_DOC_NAME + i, fileContent + i));
+        }
+        transactionalFeature.nextTransaction();
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Histogram savedDocuments = registry.histogram(ColdStorageMetrics.SAVED_DOCUMENTS_HISTOGRAM.tagged("action",
+                MoveToColdStorageContentAction.ACTION_NAME));
+        long batches = savedDocuments.getCount();
+        long saved = savedDocuments.getSum();
+
+        BulkService bulkService = Framework.getService(BulkService.class);
+        String commandId = bulkService.submitTransactional(
+                new BulkCommand.Builder(MoveToColdStorageContentAction.ACTION_NAME, "SELECT * FROM File",
+                        SecurityConstants.SYSTEM_USERNAME).build());
+        coreFeature.waitForAsyncCompletion();
+
+        BulkStatus status = bulkService.getStatus(commandId);
+        assertTrue(status.isCompleted());
+        assertEquals(0, status.getErrorCount());
+        for (DocumentModel doc : docs) {
+            assertSentToColdStorage(session, doc.getRef());
+        }
+        // the 10 documents of the single computation batch are saved 3 by 3
+        assertEquals(batches + 4, savedDocuments.getCount());
+        assertEquals(saved + 10, savedDocuments.getSum());
+    }
+
+    @Test
+    public void shouldBulkMoveToColdStorageOncePerBlob() throws IOException {
+        List<DocumentModel> docs = new ArrayList<>();
+        int nbBlobs = 2;
+        for (int i = 0; i < nbBlobs; i++) {
+            Blob blob = Blobs.createBlob(FILE_CONTENT + System.currentTimeMillis() + i);
+            blob.setDigest(UUID.randomUUID().toString());
+            docs.addAll(createSameBlobFileDocuments(DEFAULT_DOC_NAME + i, 3, blob, "john", READ));
+        }
+        transactionalFeature.nextTransaction();
+
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Timer updateBlobTimer = registry.timer(
+                ColdStorageMetrics.BLOB_PROVIDER_TIMER.tagged("method", ColdStorageMetrics.METHOD_UPDATE_BLOB));
+        long updateBlobCount = updateBlobTimer.getCount();
+
+        BulkService bulkService = Framework.getService(BulkService.class);
+        String commandId = bulkService.submitTransactional(
+                new BulkCommand.Builder(MoveToColdStorageContentAction.ACTION_NAME, "SELECT * FROM File",
+                        SecurityConstants.SYSTEM_USERNAME).build());
+        coreFeature.waitForAsyncCompletion();
+
+        BulkStatus status = bulkService.getStatus(commandId);
+        assertTrue(status.isCompleted());
+        assertEquals(0, status.getErrorCount());
+        // a single storage class update per blob, whatever the number of documents sharing it
+        assertEquals(nbBlobs, updateBlobTimer.getCount() - updateBlobCount);
+        for (DocumentModel doc : docs) {
+            assertSentToColdStorage(session, doc.getRef());
+        }
+    }
+
     @Test
     public void shouldFireDedicatedDownloadEvent() {
         DocumentModel doc = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME);
@@ -221,6 +336,408 @@ public class TestDummyColdStorageService extends AbstractTestColdStorageService
         assertTrue(caughtEvents.isEmpty());
     }
 
+    @Test
+    @Deploy("org.nuxeo.coldstorage.test:OSGI-INF/test-coldstorage-bulk-contrib.xml")
+    public void shouldCoalescePropagationCommands() throws IOException {
+        List<List<DocumentModel>> lists = new ArrayList<>();
+        int nbBlobs = 3;
+        for (int i = 0; i < nbBlobs; i++) {
+            Blob blob = Blobs.createBlob(FILE_CONTENT + System.currentTimeMillis() + i);
+            blob.setDigest(UUID.randomUUID().toString());
+            lists.add(createSameBlobFileDocuments(DEFAULT_DOC_NAME + i, 3, blob, "john", READ, WRITE,
+                    WRITE_COLD_STORAGE));
+        }
+        coreFeature.waitForAsyncCompletion(); // for thumbnail generation
+
+        BulkCommandCoalescer coalescer = ((ColdStorageServiceImpl) service).getBulkCommandCoalescer();
+        long requested = coalescer.getRequestedCount();
+        long submitted = coalescer.getSubmittedCount();
+
+        // move the first document of each list within the same transaction
+        for (List<DocumentModel> list : lists) {
+            service.moveToColdStorage(session, list.get(0).getRef());
+        }
+        transactionalFeature.nextTransaction();
+
+        assertEquals(nbBlobs, coalescer.getRequestedCount() - requested);
+        assertEquals(1, coalescer.getSubmittedCount() - submitted);
+
+        coreFeature.waitForAsyncCompletion();
+        for (List<DocumentModel> list : lists) {
+            for (DocumentModel doc : list) {
+                assertSentToColdStorage(session, doc.getRef());
+            }
+        }
+    }
+
+    @Test
+    public void shouldDropPropagationOfRollbackOnlyTransaction() {
+        BulkCommandCoalescer coalescer = ((ColdStorageServiceImpl) service).getBulkCommandCoalescer();
+        long submitted = coalescer.getSubmittedCount();
+
+        TransactionHelper.setTransactionRollbackOnly();
+        service.propagateMoveToColdStorage(session, UUID.randomUUID().toString());
+        assertNull(coalescer.buffer.get());
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        assertEquals(0, coalescer.getSubmittedCount() - submitted);
+
+        // the next transactions of the thread still submit their commands
+        service.propagateMoveToColdStorage(session, UUID.randomUUID().toString());
+        transactionalFeature.nextTransaction();
+        assertEquals(1, coalescer.getSubmittedCount() - submitted);
+        assertNull(coalescer.buffer.get());
+    }
+
+    @Test
+    @Deploy("org.nuxeo.coldstorage.test:OSGI-INF/test-coldstorage-bulk-contrib.xml")
+    public void shouldBulkRequestRetrievalOncePerBlob() {
+        List<DocumentModel> docs = new ArrayList<>();
+        int nbBlobs = 2;
+        for (int i = 0; i < nbBlobs; i++) {
+            Blob blob = Blobs.createBlob(FILE_CONTENT + System.currentTimeMillis() + i);
+            blob.setDigest(UUID.randomUUID().toString());
+            List<DocumentModel> list = createSameBlobFileDocuments(DEFAULT_DOC_NAME + i, 3, blob, "john", READ);
+            docs.addAll(list);
+            service.moveToColdStorage(session, list.get(0).getRef());
+        }
+        coreFeature.waitForAsyncCompletion();
+
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Timer updateBlobTimer = registry.timer(
+                ColdStorageMetrics.BLOB_PROVIDER_TIMER.tagged("method", ColdStorageMetrics.METHOD_UPDATE_BLOB));
+        long updateBlobCount = updateBlobTimer.getCount();
+
+        BulkService bulkService = Framework.getService(BulkService.class);
+        String commandId = bulkService.submitTransactional(
+                new BulkCommand.Builder(RequestRetrievalFromColdStorageAction.ACTION_NAME, "SELECT * FROM File",
+                        SecurityConstants.SYSTEM_USERNAME).param(RequestRetrievalFromColdStorageAction.PARAM_TIER,
+                                "Bulk").build());
+        coreFeature.waitForAsyncCompletion();
+
+        BulkStatus status = bulkService.getStatus(commandId);
+        assertTrue(status.isCompleted());
+        assertEquals(0, status.getErrorCount());
+        assertEquals(docs.size(), status.getProcessed());
+        // a single restore request per blob, whatever the batches the documents sharing it belong to
+        assertEquals(nbBlobs, updateBlobTimer.getCount() - updateBlobCount);
+        for (DocumentModel doc : docs) {
+            doc = session.getDocument(doc.getRef());
+            assertEquals(Boolean.TRUE, doc.getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY));
+            // the dummy blob provider doesn't support retrieval tiers
+            assertEquals("STANDARD", doc.getPropertyValue(COLD_STORAGE_RETRIEVAL_TIER_PROPERTY));
+        }
+    }
+
+    @Test
+    public void shouldRecordStandardTierIfNotSupported() {
+        DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, true);
+        service.moveToColdStorage(session, documentModel.getRef());
+        transactionalFeature.nextTransaction();
+
+        documentModel = service.retrieveFromColdStorage(session, documentModel.getRef(), RESTORE_DURATION,
+                RetrievalTier.BULK);
+        assertEquals("STANDARD", documentModel.getPropertyValue(COLD_STORAGE_RETRIEVAL_TIER_PROPERTY));
+        Blob coldContent = (Blob) documentModel.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+        RetrievalLedger.Entry requested = service.getRetrievalLedger()
+                                                 .get(ColdStorageServiceImpl.getContentBlobKey(coldContent));
+        assertEquals(RetrievalTier.STANDARD, requested.getRetrievalTier());
+    }
+
+    @Test
+    public void shouldResolveDocumentsSharingRetrievedBlob() throws InterruptedException {
+        Blob blob = Blobs.createBlob(FILE_CONTENT + System.currentTimeMillis());
+        blob.setDigest(UUID.randomUUID().toString());
+        List<DocumentModel> docs = createSameBlobFileDocuments(DEFAULT_DOC_NAME, 3, blob, "john", READ);
+        service.moveToColdStorage(session, docs.get(0).getRef());
+        coreFeature.waitForAsyncCompletion();
+
+        for (DocumentModel doc : docs) {
+            service.retrieveFromColdStorage(session, doc.getRef(), RESTORE_DURATION);
+        }
+        transactionalFeature.nextTransaction();
+        String key = ColdStorageServiceImpl.getContentBlobKey(
+                (Blob) session.getDocument(docs.get(0).getRef()).getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY));
+        assertEquals(docs.size(), service.getRetrievalLedger().getWaitingDocuments(key).size());
+
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+        List<DocumentModel> beingRetrieved = docs.stream()
+                                                 .map(doc -> session.getDocument(doc.getRef()))
+                                                 .collect(Collectors.toList());
+        try (CapturingEventListener listener = new CapturingEventListener(COLD_STORAGE_CONTENT_AVAILABLE_EVENT_NAME)) {
+            // the first check resolves all the documents waiting for the same blob
+            assertTrue(service.checkIsRetrieved(session, beingRetrieved.get(0)));
+            assertEquals(docs.size(), listener.streamCapturedEvents().count());
+            for (DocumentModel doc : docs) {
+                doc = session.getDocument(doc.getRef());
+                assertEquals(Boolean.FALSE, doc.getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY));
+                assertNotNull(doc.getPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL));
+            }
+            // the next checks of the documents loaded before are no-ops
+            assertTrue(service.checkIsRetrieved(session, beingRetrieved.get(1)));
+            assertEquals(docs.size(), listener.streamCapturedEvents().count());
+        }
+        assertTrue(service.getRetrievalLedger().get(key).isCompleted());
+    }
+
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_BLOB_STATUS_CACHE_TTL_PROPERTY_NAME, value = "600")
+    @WithFrameworkProperty(name = COLD_STORAGE_BLOB_STATUS_CACHE_ONGOING_RESTORE_TTL_PROPERTY_NAME, value = "60")
+    public void shouldNotDropRetrievalWithStatusCacheEnabled() {
+        // rebuild the cache with the default time to live
+        ((ColdStorageServiceImpl) service).blobStatusCache = null;
+        try {
+            BlobStatusCache cache = service.getBlobStatusCache();
+            assertTrue(cache.isEnabled());
+            DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, true);
+            documentModel = service.moveToColdStorage(session, documentModel.getRef());
+            ManagedBlob coldContent = (ManagedBlob) documentModel.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+
+            // the status as read by another node before the retrieval is requested
+            BlobStatus coldStatus = ColdStorageHelper.getStatus(coldContent);
+            assertTrue(ColdStorageHelper.isInColdStorage(coldStatus));
+            assertFalse(coldStatus.isOngoingRestore());
+            assertNotNull(cache.get(coldContent.getKey()));
+
+            DocumentRef documentRef = documentModel.getRef();
+            service.retrieveFromColdStorage(session, documentRef, RESTORE_DURATION);
+            transactionalFeature.nextTransaction();
+
+            // the other node missed the invalidation and keeps the stale status, but doesn't drop the retrieval
+            cache.put(coldContent.getKey(), coldStatus);
+            assertNotNull(cache.get(coldContent.getKey()));
+            assertFalse(service.checkIsRetrieved(session, session.getDocument(documentRef)));
+            assertFalse(service.checkIsRetrieved(session, session.getDocument(documentRef), coldStatus));
+            documentModel = session.getDocument(documentRef);
+            assertEquals(Boolean.TRUE, documentModel.getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY));
+            assertNotNull(service.getRetrievalLedger().get(ColdStorageServiceImpl.getContentBlobKey(coldContent)));
+        } finally {
+            ((ColdStorageServiceImpl) service).blobStatusCache.stop();
+            ((ColdStorageServiceImpl) service).blobStatusCache = null;
+        }
+    }
+
+    @Test
+    public void shouldRecordMetrics() {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Timer moveTimer = registry.timer(ColdStorageMetrics.OPERATION_TIMER.tagged("operation",
+                ColdStorageMetrics.OPERATION_MOVE, "outcome", ColdStorageMetrics.OUTCOME_SUCCESS));
+        Timer moveFailureTimer = registry.timer(ColdStorageMetrics.OPERATION_TIMER.tagged("operation",
+                ColdStorageMetrics.OPERATION_MOVE, "outcome", ColdStorageMetrics.OUTCOME_FAILURE));
+        Timer updateBlobTimer = registry.timer(
+                ColdStorageMetrics.BLOB_PROVIDER_TIMER.tagged("method", ColdStorageMetrics.METHOD_UPDATE_BLOB));
+        Counter propagationCounter = registry.counter(ColdStorageMetrics.PROPAGATION_REQUESTED_COUNTER.tagged("action",
+                PropagateMoveToColdStorageContentAction.ACTION_NAME));
+        long moveCount = moveTimer.getCount();
+        long moveFailureCount = moveFailureTimer.getCount();
+        long updateBlobCount = updateBlobTimer.getCount();
+        long propagationCount = propagationCounter.getCount();
+
+        DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, FILE_CONTENT);
+        service.moveToColdStorage(session, documentModel.getRef());
+        assertEquals(moveCount + 1, moveTimer.getCount());
+        assertEquals(updateBlobCount + 1, updateBlobTimer.getCount());
+        assertEquals(propagationCount + 1, propagationCounter.getCount());
+
+        DocumentModel noContent = session.createDocument(session.createDocumentModel("/", "noContent", "File"));
+        try {
+            service.moveToColdStorage(session, noContent.getRef());
+            fail("Should fail because there is no main content associated with the document");
+        } catch (NuxeoException e) {
+            assertEquals(SC_NOT_FOUND, e.getStatusCode());
+        }
+        assertEquals(moveFailureCount + 1, moveFailureTimer.getCount());
+    }
+
+    @Test
+    public void shouldIndexColdDigests() throws IOException {
+        service.reconcileContentStatus(session);
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Counter propagationCounter = registry.counter(ColdStorageMetrics.PROPAGATION_REQUESTED_COUNTER.tagged("action",
+                PropagateRestoreFromColdStorageContentAction.ACTION_NAME));
+        long propagationCount = propagationCounter.getCount();
+        ColdDigestIndex index = service.getColdDigestIndex();
+        String repository = session.getRepositoryName();
+
+        // a blob never moved to cold storage is told apart without propagating a restore
+        final String fileContent = FILE_CONTENT + System.nanoTime();
+        DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, fileContent);
+        String digest = ((Blob) session.getDocument(documentModel.getRef())
+                                       .getPropertyValue(FILE_CONTENT_PROPERTY)).getDigest();
+        assertFalse(index.mightBeCold(repository, digest));
+        assertEquals(propagationCount, propagationCounter.getCount());
+
+        service.moveToColdStorage(session, documentModel.getRef());
+        transactionalFeature.nextTransaction();
+        assertTrue(index.mightBeCold(repository, digest));
+
+        // a new document referencing the blob is still moved to cold storage
+        DocumentModel other = createFileDocument(DEFAULT_DOC_NAME + "2", fileContent);
+        assertSentToColdStorage(session, other.getRef());
+    }
+
+    @Test
+    public void shouldDropColdDigestsOfRollbackOnlyTransaction() {
+        ColdDigestIndex index = new ColdDigestIndex(new MemKeyValueStore(), 1000);
+        index.reconcile("test", List.of());
+        TransactionHelper.setTransactionRollbackOnly();
+        index.recordMove("digest1");
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        assertFalse(index.mightBeCold("test", "digest1"));
+
+        // the next transactions of the thread still update the set
+        index.recordMove("digest2");
+        transactionalFeature.nextTransaction();
+        assertTrue(index.mightBeCold("test", "digest2"));
+    }
+
+    @Test
+    public void shouldMaintainContentStatus() throws InterruptedException {
+        ColdStorageContentStatus status = service.reconcileContentStatus(session);
+        assertEquals(0, status.getTotalBeingRetrieved());
+        assertEquals(0, status.getTotalAvailable());
+
+        DocumentRef docRef1 = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME + "1").getRef();
+        moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME + "2");
+        // counters are updated once the transaction is committed
+        assertEquals(0, service.getContentStatus(session).getTotalBeingRetrieved());
+        transactionalFeature.nextTransaction();
+        status = service.getContentStatus(session);
+        assertEquals(2, status.getTotalBeingRetrieved());
+        assertEquals(0, status.getTotalAvailable());
+
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+        assertTrue(service.checkIsRetrieved(session, session.getDocument(docRef1)));
+        transactionalFeature.nextTransaction();
+        status = service.getContentStatus(session);
+        assertEquals(1, status.getTotalBeingRetrieved());
+        assertEquals(1, status.getTotalAvailable());
+
+        // the counters match the actual counts
+        status = service.reconcileContentStatus(session);
+        assertEquals(1, status.getTotalBeingRetrieved());
+        assertEquals(1, status.getTotalAvailable());
+    }
+
+    @Test
+    public void shouldReconcileContentStatusPageByPage() {
+        ColdStorageServiceImpl serviceImpl = (ColdStorageServiceImpl) service;
+        serviceImpl.reconcilePageSize = 2;
+        try {
+            for (int i = 0; i < 5; i++) {
+                moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME + i);
+            }
+            transactionalFeature.nextTransaction();
+            String repository = session.getRepositoryName();
+            // forget the documents being retrieved, as before an upgrade
+            service.getInFlightRetrievals().reset(repository, Map.of());
+            assertTrue(service.getInFlightRetrievals().getDocuments(repository).isEmpty());
+
+            ColdStorageContentStatus status = service.reconcileContentStatus(session);
+            assertEquals(5, status.getTotalBeingRetrieved());
+            assertEquals(5, service.getInFlightRetrievals().getDocuments(repository).size());
+        } finally {
+            serviceImpl.reconcilePageSize = ColdStorageServiceImpl.RECONCILE_PAGE_SIZE;
+        }
+    }
+
+    @Test
+    public void shouldDropContentStatusTransitionsOfRollbackOnlyTransaction() {
+        ColdStorageContentStatusCounters counters = new ColdStorageContentStatusCounters(new MemKeyValueStore());
+        TransactionHelper.setTransactionRollbackOnly();
+        counters.recordTransition("test", ColdStorageContentStatusCounters.STATE_NONE,
+                ColdStorageContentStatusCounters.STATE_BEING_RETRIEVED);
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        assertEquals(0, counters.getStatus("test").getTotalBeingRetrieved());
+
+        // the next transactions of the thread still update the counters
+        counters.recordTransition("test", ColdStorageContentStatusCounters.STATE_NONE,
+                ColdStorageContentStatusCounters.STATE_BEING_RETRIEVED);
+        transactionalFeature.nextTransaction();
+        assertEquals(1, counters.getStatus("test").getTotalBeingRetrieved());
+    }
+
+    @Test
+    public void shouldExpireColdStorageContent() throws InterruptedException {
+        DocumentModel doc = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME);
+        DocumentModel other = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME + "2");
+        transactionalFeature.nextTransaction();
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+        assertTrue(service.checkIsRetrieved(session, session.getDocument(doc.getRef())));
+        assertTrue(service.checkIsRetrieved(session, session.getDocument(other.getRef())));
+        transactionalFeature.nextTransaction();
+        assertEquals(2, service.getContentStatus(session).getTotalAvailable());
+
+        // the retrieved content of the first document is no longer available
+        doc = session.getDocument(doc.getRef());
+        Calendar expired = Calendar.getInstance();
+        expired.add(Calendar.HOUR, -1);
+        doc.setPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL, expired);
+        session.saveDocument(doc);
+        transactionalFeature.nextTransaction();
+
+        try (CapturingEventListener listener = new CapturingEventListener(COLD_STORAGE_CONTENT_EXPIRED_EVENT_NAME)) {
+            service.expireColdStorageContent(session);
+            coreFeature.waitForAsyncCompletion();
+
+            assertEquals(List.of(doc.getId()),
+                    listener.streamCapturedEvents()
+                            .map(event -> ((DocumentEventContext) event.getContext()).getSourceDocument().getId())
+                            .collect(Collectors.toList()));
+        }
+        assertNull(session.getDocument(doc.getRef()).getPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL));
+        assertNotNull(session.getDocument(other.getRef()).getPropertyValue(COLD_STORAGE_CONTENT_DOWNLOADABLE_UNTIL));
+        assertEquals(1, service.getContentStatus(session).getTotalAvailable());
+        assertEquals(1, service.reconcileContentStatus(session).getTotalAvailable());
+    }
+
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME, value = "false")
+    public void shouldCheckAlreadyInColdStorageAfterCommit() throws IOException {
+        final String fileContent = FILE_CONTENT + System.nanoTime();
+        DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, fileContent);
+        service.moveToColdStorage(session, documentModel.getRef());
+        transactionalFeature.nextTransaction();
+
+        // a new document referencing the blob already in cold storage
+        DocumentModel other = createFileDocument(DEFAULT_DOC_NAME + "2", fileContent);
+        // the cold storage is not probed within the transaction
+        assertFalse(session.getDocument(other.getRef()).hasFacet(COLD_STORAGE_FACET_NAME));
+
+        transactionalFeature.nextTransaction();
+        coreFeature.waitForAsyncCompletion();
+        assertSentToColdStorage(session, other.getRef());
+    }
+
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_CHECK_ALREADY_IN_COLD_STORAGE_STRICT_PROPERTY_NAME, value = "false")
+    public void shouldNotCheckAlreadyInColdStorageForDigestNotCold() {
+        service.reconcileContentStatus(session);
+        BulkCommandCoalescer coalescer = ((ColdStorageServiceImpl) service).getBulkCommandCoalescer();
+        long requested = coalescer.getRequestedCount();
+
+        // documents created and updated with a blob never moved to cold storage
+        final String fileContent = FILE_CONTENT + System.nanoTime();
+        DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, fileContent);
+        documentModel.setPropertyValue("dc:title", "updated");
+        session.saveDocument(documentModel);
+        createFileDocument(DEFAULT_DOC_NAME + "2", fileContent);
+        transactionalFeature.nextTransaction();
+        // no bulk command is submitted to check them
+        assertEquals(requested, coalescer.getRequestedCount());
+
+        // a document referencing a blob in cold storage is still checked
+        service.moveToColdStorage(session, documentModel.getRef());
+        transactionalFeature.nextTransaction();
+        coreFeature.waitForAsyncCompletion();
+        requested = coalescer.getRequestedCount();
+        createFileDocument(DEFAULT_DOC_NAME + "3", fileContent);
+        transactionalFeature.nextTransaction();
+        assertEquals(requested + 1, coalescer.getRequestedCount());
+    }
+
     public static class ColdStorageActionsLogFilter implements LogCaptureFeature.Filter {
         @Override
         public boolean accept(LogEvent event) {
@@ -302,6 +819,236 @@ public class TestDummyColdStorageService extends AbstractTestColdStorageService
         }
     }
 
+    @Test
+    public void shouldCheckAvailabilityOnRestoreCompleted() throws InterruptedException {
+        DocumentModel doc1 = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME + "1");
+        DocumentModel doc2 = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME + "2");
+        transactionalFeature.nextTransaction();
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+
+        // only the notified blobs are checked
+        String key1 = ColdStorageServiceImpl.getContentBlobKey(
+                (Blob) doc1.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY));
+        assertEquals(1, service.checkRestoreCompleted(session, List.of(key1)));
+        transactionalFeature.nextTransaction();
+        List<DocumentModel> beingRetrievedDocs = session.query(GET_DOCUMENTS_TO_CHECK_QUERY);
+        assertEquals(1, beingRetrievedDocs.size());
+        assertEquals(doc2.getRef(), beingRetrievedDocs.get(0).getRef());
+
+        // through the restore completed stream
+        String key = ((ManagedBlob) doc2.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY)).getKey();
+        service.notifyRestoreCompleted(key);
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!session.query(GET_DOCUMENTS_TO_CHECK_QUERY).isEmpty()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Restore completion of blob " + key + " was not processed");
+            }
+            Thread.sleep(200);
+            transactionalFeature.nextTransaction();
+        }
+        doc2 = session.getDocument(doc2.getRef());
+        assertFalse((Boolean) doc2.getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY));
+    }
+
+    @Test
+    public void shouldCheckAvailabilityOnRestoreCompletedOfKeyOtherThanDigest() throws InterruptedException {
+        Blob blob = Blobs.createBlob(FILE_CONTENT + System.nanoTime());
+        blob.setDigest(UUID.randomUUID().toString());
+        DocumentModel documentModel = createSameBlobFileDocuments(DEFAULT_DOC_NAME, 1, blob, "john", READ).get(0);
+        service.moveToColdStorage(session, documentModel.getRef());
+        documentModel = service.retrieveFromColdStorage(session, documentModel.getRef(), RESTORE_DURATION);
+        transactionalFeature.nextTransaction();
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+
+        Blob coldContent = (Blob) documentModel.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY);
+        String key = ColdStorageServiceImpl.getContentBlobKey(coldContent);
+        assertNotEquals(coldContent.getDigest(), key);
+        // the notifications hold blob keys, not digests
+        assertEquals(0, service.checkRestoreCompleted(session, List.of(coldContent.getDigest())));
+        assertEquals(1, service.checkRestoreCompleted(session, List.of(key)));
+        transactionalFeature.nextTransaction();
+        assertTrue(session.query(GET_DOCUMENTS_TO_CHECK_QUERY).isEmpty());
+    }
+
+    @Test
+    public void shouldTrackInFlightRetrievals() throws InterruptedException {
+        InFlightRetrievals inFlightRetrievals = service.getInFlightRetrievals();
+        String repository = session.getRepositoryName();
+        DocumentModel doc = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME);
+        // only tracked once committed
+        assertFalse(inFlightRetrievals.getDocumentIds(repository).contains(doc.getId()));
+        transactionalFeature.nextTransaction();
+        assertTrue(inFlightRetrievals.getDocumentIds(repository).contains(doc.getId()));
+
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+        service.checkDocToBeRetrieved(session);
+        coreFeature.waitForAsyncCompletion();
+        assertTrue(session.query(GET_DOCUMENTS_TO_CHECK_QUERY).isEmpty());
+        assertFalse(inFlightRetrievals.getDocumentIds(repository).contains(doc.getId()));
+
+        // the reconciliation restores a missed document
+        DocumentModel other = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME + "2");
+        transactionalFeature.nextTransaction();
+        inFlightRetrievals.reset(repository, Map.of());
+        assertTrue(inFlightRetrievals.getDocumentIds(repository).isEmpty());
+        service.reconcileContentStatus(session);
+        String otherKey = ((ManagedBlob) other.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY)).getKey();
+        assertEquals(Map.of(other.getId(), otherKey), inFlightRetrievals.getDocuments(repository));
+    }
+
+    @Test
+    public void shouldDropInFlightRetrievalsOfRollbackOnlyTransaction() {
+        InFlightRetrievals inFlightRetrievals = new InFlightRetrievals(new MemKeyValueStore());
+        TransactionHelper.setTransactionRollbackOnly();
+        inFlightRetrievals.recordTransition("test", "doc1", "key1", ColdStorageContentStatusCounters.STATE_NONE,
+                ColdStorageContentStatusCounters.STATE_BEING_RETRIEVED);
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        assertTrue(inFlightRetrievals.getDocumentIds("test").isEmpty());
+
+        // the next transactions of the thread still update the set
+        inFlightRetrievals.recordTransition("test", "doc2", "key2", ColdStorageContentStatusCounters.STATE_NONE,
+                ColdStorageContentStatusCounters.STATE_BEING_RETRIEVED);
+        transactionalFeature.nextTransaction();
+        assertEquals(List.of("doc2"), inFlightRetrievals.getDocumentIds("test"));
+    }
+
+    @Test
+    public void shouldReconcileInFlightRetrievalsOnFirstCheck() {
+        DocumentModel doc = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME);
+        transactionalFeature.nextTransaction();
+        String repository = session.getRepositoryName();
+
+        // an empty set, as right after an upgrade
+        ColdStorageServiceImpl serviceImpl = (ColdStorageServiceImpl) service;
+        InFlightRetrievals deployed = serviceImpl.inFlightRetrievals;
+        InFlightRetrievals inFlightRetrievals = new InFlightRetrievals(new MemKeyValueStore());
+        serviceImpl.inFlightRetrievals = inFlightRetrievals;
+        try {
+            assertFalse(inFlightRetrievals.isReconciled(repository));
+            service.checkDocToBeRetrieved(session);
+            assertTrue(inFlightRetrievals.isReconciled(repository));
+            assertEquals(List.of(doc.getId()), inFlightRetrievals.getDocumentIds(repository));
+            coreFeature.waitForAsyncCompletion();
+        } finally {
+            serviceImpl.inFlightRetrievals = deployed;
+        }
+    }
+
+    @Test
+    public void shouldNotSaveDocumentsStillBeingRetrievedOnCheck() throws InterruptedException {
+        DocumentModel doc = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME);
+        transactionalFeature.nextTransaction();
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+        addColdStorageContentBlobStatus(doc.getRef(),
+                new BlobStatus().withDownloadable(false).withOngoingRestore(true));
+        String changeToken = session.getDocument(doc.getRef()).getChangeToken();
+
+        service.checkDocToBeRetrieved(session);
+        coreFeature.waitForAsyncCompletion();
+        doc = session.getDocument(doc.getRef());
+        assertTrue((Boolean) doc.getPropertyValue(COLD_STORAGE_BEING_RETRIEVED_PROPERTY));
+        assertEquals(changeToken, doc.getChangeToken());
+    }
+
+    @Test
+    public void shouldCheckAvailabilityByShard() throws InterruptedException {
+        DocumentModel doc1 = createFileDocument(DEFAULT_DOC_NAME + "1", FILE_CONTENT + "1" + System.nanoTime());
+        DocumentModel doc2 = createFileDocument(DEFAULT_DOC_NAME + "2", FILE_CONTENT + "2" + System.nanoTime());
+        for (DocumentRef docRef : List.of(doc1.getRef(), doc2.getRef())) {
+            service.moveToColdStorage(session, docRef);
+            service.retrieveFromColdStorage(session, docRef, RESTORE_DURATION);
+        }
+        doc1 = session.getDocument(doc1.getRef());
+        doc2 = session.getDocument(doc2.getRef());
+        transactionalFeature.nextTransaction();
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+
+        // a number of shards splitting both documents
+        String key1 = ((ManagedBlob) doc1.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY)).getKey();
+        String key2 = ((ManagedBlob) doc2.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY)).getKey();
+        int shards = 2;
+        while (InFlightRetrievals.getShard(key1, shards) == InFlightRetrievals.getShard(key2, shards)) {
+            shards++;
+        }
+
+        service.checkDocToBeRetrieved(session, InFlightRetrievals.getShard(key1, shards), shards);
+        coreFeature.waitForAsyncCompletion();
+        List<DocumentModel> beingRetrievedDocs = session.query(GET_DOCUMENTS_TO_CHECK_QUERY);
+        assertEquals(1, beingRetrievedDocs.size());
+        assertEquals(doc2.getRef(), beingRetrievedDocs.get(0).getRef());
+
+        service.checkDocToBeRetrieved(session, InFlightRetrievals.getShard(key2, shards), shards);
+        coreFeature.waitForAsyncCompletion();
+        assertTrue(session.query(GET_DOCUMENTS_TO_CHECK_QUERY).isEmpty());
+    }
+
+    @Test
+    public void shouldCheckAvailabilityOfSeveralShardsAtOnce() throws InterruptedException {
+        List<DocumentModel> docs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            DocumentModel doc = createFileDocument(DEFAULT_DOC_NAME + i, FILE_CONTENT + i + System.nanoTime());
+            service.moveToColdStorage(session, doc.getRef());
+            docs.add(service.retrieveFromColdStorage(session, doc.getRef(), RESTORE_DURATION));
+        }
+        transactionalFeature.nextTransaction();
+        Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+
+        // a number of shards splitting the third document from the first two ones
+        List<String> keys = docs.stream()
+                                .map(doc -> (ManagedBlob) doc.getPropertyValue(COLD_STORAGE_CONTENT_PROPERTY))
+                                .map(ManagedBlob::getKey)
+                                .collect(Collectors.toList());
+        int shards = 2;
+        while (InFlightRetrievals.getShard(keys.get(2), shards) == InFlightRetrievals.getShard(keys.get(0), shards)
+                || InFlightRetrievals.getShard(keys.get(2), shards) == InFlightRetrievals.getShard(keys.get(1),
+                        shards)) {
+            shards++;
+        }
+        int nbShards = shards;
+        Set<Integer> checkedShards = keys.subList(0, 2)
+                                         .stream()
+                                         .map(key -> InFlightRetrievals.getShard(key, nbShards))
+                                         .collect(Collectors.toSet());
+
+        service.checkDocToBeRetrieved(session, checkedShards, shards);
+        coreFeature.waitForAsyncCompletion();
+        List<DocumentModel> beingRetrievedDocs = session.query(GET_DOCUMENTS_TO_CHECK_QUERY);
+        assertEquals(1, beingRetrievedDocs.size());
+        assertEquals(docs.get(2).getRef(), beingRetrievedDocs.get(0).getRef());
+    }
+
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_CHECK_RETRIEVE_EXPECTED_DELAY_PROPERTY_NAME, value = "3600")
+    public void shouldNotCheckAvailabilityBeforeExpectedDelay() throws InterruptedException {
+        // rebuild the schedule with the expected delay of this test
+        ((ColdStorageServiceImpl) service).availabilityCheckSchedule = null;
+        try {
+            DocumentModel doc = moveAndRequestRetrievalFromColdStorage(DEFAULT_DOC_NAME);
+            transactionalFeature.nextTransaction();
+            Thread.sleep(DummyBlobProvider.RESTORE_DELAY_MILLISECONDS + 200);
+
+            // the retrieval was requested too recently to be completed
+            service.checkDocToBeRetrieved(session);
+            coreFeature.waitForAsyncCompletion();
+            assertEquals(1, session.query(GET_DOCUMENTS_TO_CHECK_QUERY).size());
+
+            // once due, it is checked
+            service.getAvailabilityCheckSchedule().remove(doc.getId());
+            service.checkDocToBeRetrieved(session);
+            coreFeature.waitForAsyncCompletion();
+            assertTrue(session.query(GET_DOCUMENTS_TO_CHECK_QUERY).isEmpty());
+        } finally {
+            ((ColdStorageServiceImpl) service).availabilityCheckSchedule = null;
+        }
+    }
+
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_CHECK_RETRIEVE_CRON_PROPERTY_NAME, value = "0 7 */6 ? * * *")
+    public void shouldDeriveHeartbeatFromCheckInterval() {
+        assertEquals(Duration.ofHours(6), ((ColdStorageServiceImpl) service).getAvailabilityCheckInterval());
+    }
+
     // NXP-32003
     @Test
     public void shouldCheckAvailabilityOnVersion() throws InterruptedException {
@@ -421,6 +1168,179 @@ public class TestDummyColdStorageService extends AbstractTestColdStorageService
         assertRestoredFromColdStorage(documentModel.getRef(), fileContent);
     }
 
+    @Test
+    public void shouldRestoreInASingleWrite() throws IOException {
+        final String fileContent = FILE_CONTENT + System.nanoTime();
+        DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, fileContent);
+        service.moveToColdStorage(session, documentModel.getRef());
+        transactionalFeature.nextTransaction();
+
+        documentModel = session.getDocument(documentModel.getRef());
+        try (CapturingEventListener listener = new CapturingEventListener(BEFORE_DOC_UPDATE, DOCUMENT_UPDATED)) {
+            service.proceedRestoreMainContent(session, documentModel, false, false);
+
+            assertEquals(1, listener.streamCapturedEvents().filter(e -> BEFORE_DOC_UPDATE.equals(e.getName())).count());
+            assertEquals(1, listener.streamCapturedEvents().filter(e -> DOCUMENT_UPDATED.equals(e.getName())).count());
+        }
+        transactionalFeature.nextTransaction();
+        assertRestoredFromColdStorage(documentModel.getRef(), fileContent);
+    }
+
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_PLACEHOLDER_ASYNC_PROPERTY_NAME, value = "true")
+    public void shouldComputePlaceholderRenditionAfterMove() throws IOException, InterruptedException {
+        DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, FILE_CONTENT + System.nanoTime());
+        DocumentRef documentRef = documentModel.getRef();
+        documentModel = service.moveToColdStorage(session, documentRef);
+
+        // the document is moved with a temporary placeholder, its blob stays in the main storage meanwhile
+        assertEquals(Boolean.TRUE, documentModel.getPropertyValue(COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY));
+        assertEquals(ColdStorageServiceImpl.TEMPORARY_PLACEHOLDER_FILENAME,
+                ((Blob) documentModel.getPropertyValue(FILE_CONTENT_PROPERTY)).getFilename());
+        assertFalse(ColdStorageHelper.isInColdStorage(getColdContentStatus(documentRef)));
+        try {
+            service.retrieveFromColdStorage(session, documentRef, RESTORE_DURATION);
+            fail("Should not be able to retrieve a document being moved to cold storage");
+        } catch (NuxeoException e) {
+            assertEquals(SC_CONFLICT, e.getStatusCode());
+        }
+        transactionalFeature.nextTransaction();
+
+        waitForPlaceholderRendition(documentRef);
+        assertSentToColdStorage(session, documentRef);
+        assertTrue(ColdStorageHelper.isInColdStorage(getColdContentStatus(documentRef)));
+    }
+
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_PLACEHOLDER_ASYNC_PROPERTY_NAME, value = "true")
+    public void shouldRetryPendingPlaceholderRendition() throws InterruptedException {
+        DocumentModel documentModel = createFileDocument(DEFAULT_DOC_NAME, FILE_CONTENT + System.nanoTime());
+        DocumentRef documentRef = documentModel.getRef();
+        service.moveToColdStorage(session, documentRef);
+        transactionalFeature.nextTransaction();
+        waitForPlaceholderRendition(documentRef);
+        assertEquals(0, service.retryPlaceholderRenditions(session));
+
+        // the rendition failed for good, or was never scheduled
+        documentModel = session.getDocument(documentRef);
+        documentModel.setPropertyValue(COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY, true);
+        documentModel.putContextData(PreventColdStorageUpdateListener.DISABLE_PREVENT_COLD_STORAGE_UPDATE_LISTENER,
+                true);
+        session.saveDocument(documentModel);
+        transactionalFeature.nextTransaction();
+
+        assertEquals(1, service.retryPlaceholderRenditions(session));
+        waitForPlaceholderRendition(documentRef);
+        assertSentToColdStorage(session, documentRef);
+    }
+
+    protected void waitForPlaceholderRendition(DocumentRef documentRef) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (Boolean.TRUE.equals(
+                session.getDocument(documentRef).getPropertyValue(COLD_STORAGE_PLACEHOLDER_PENDING_PROPERTY))) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Placeholder rendition of document " + documentRef + " was not computed");
+            }
+            Thread.sleep(200);
+            transactionalFeature.nextTransaction();
+        }
+    }
+
+    @Test
+    @WithFrameworkProperty(name = COLD_STORAGE_PLACEHOLDER_REUSE_STORED_BLOBS_PROPERTY_NAME, value = "true")
+    public void shouldReuseStoredThumbnailAsPlaceholder() throws IOException {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Counter reusedCounter = registry.counter(
+                ColdStorageMetrics.PLACEHOLDER_COUNTER.tagged("outcome", ColdStorageMetrics.OUTCOME_REUSED));
+        Counter computedCounter = registry.counter(
+                ColdStorageMetrics.PLACEHOLDER_COUNTER.tagged("outcome", ColdStorageMetrics.OUTCOME_COMPUTED));
+        long reusedCount = reusedCounter.getCount();
+        long computedCount = computedCounter.getCount();
+
+        // a document of which thumbnail is already stored
+        String thumbnailContent = "stored thumbnail " + System.nanoTime();
+        DocumentModel documentModel = session.createDocumentModel("/", DEFAULT_DOC_NAME, "File");
+        documentModel.setPropertyValue(FILE_CONTENT_PROPERTY,
+                (Serializable) Blobs.createBlob(FILE_CONTENT + System.nanoTime()));
+        documentModel.addFacet(ThumbnailConstants.THUMBNAIL_FACET);
+        documentModel.setPropertyValue(ThumbnailConstants.THUMBNAIL_PROPERTY_NAME,
+                (Serializable) Blobs.createBlob(thumbnailContent));
+        documentModel.putContextData(ThumbnailConstants.DISABLE_THUMBNAIL_COMPUTATION, true);
+        documentModel = session.createDocument(documentModel);
+        Blob thumbnail = (Blob) documentModel.getPropertyValue(ThumbnailConstants.THUMBNAIL_PROPERTY_NAME);
+
+        documentModel = service.moveToColdStorage(session, documentModel.getRef());
+        Blob placeholder = (Blob) documentModel.getPropertyValue(FILE_CONTENT_PROPERTY);
+        assertEquals(thumbnailContent, placeholder.getString());
+        assertEquals(thumbnail.getDigest(), placeholder.getDigest());
+        assertEquals(reusedCount + 1, reusedCounter.getCount());
+        assertEquals(computedCount, computedCounter.getCount());
+
+        // a document without stored thumbnail falls back on the rendition service
+        documentModel = createFileDocument(DEFAULT_DOC_NAME + "2", true);
+        documentModel = service.moveToColdStorage(session, documentModel.getRef());
+        placeholder = (Blob) documentModel.getPropertyValue(FILE_CONTENT_PROPERTY);
+        assertEquals(DUMMY_THUMBNAIL_CONTENT, placeholder.getString());
+        assertEquals(reusedCount + 1, reusedCounter.getCount());
+        assertEquals(computedCount + 1, computedCounter.getCount());
+    }
+
+    @Test
+    public void shouldPropagateWithASingleEventPerBatch() {
+        Blob blob = Blobs.createBlob(FILE_CONTENT + System.nanoTime());
+        blob.setDigest(UUID.randomUUID().toString());
+        List<DocumentModel> docs = createSameBlobFileDocuments(DEFAULT_DOC_NAME, 4, blob, "john", READ);
+        coreFeature.waitForAsyncCompletion(); // for thumbnail generation
+        Set<String> propagatedIds = docs.stream().skip(1).map(DocumentModel::getId).collect(Collectors.toSet());
+
+        try (CapturingEventListener listener = new CapturingEventListener(COLD_STORAGE_CONTENT_MOVED_EVENT_NAME,
+                COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME)) {
+            service.moveToColdStorage(session, docs.get(0).getRef());
+            transactionalFeature.nextTransaction();
+            coreFeature.waitForAsyncCompletion();
+
+            // the moved document is notified on its own, the documents sharing its blob all at once
+            assertEquals(1, listener.streamCapturedEvents()
+                                    .filter(e -> COLD_STORAGE_CONTENT_MOVED_EVENT_NAME.equals(e.getName()))
+                                    .count());
+            List<EventContext> propagated = listener.streamCapturedEvents()
+                                                    .filter(e -> COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME.equals(
+                                                            e.getName()))
+                                                    .map(Event::getContext)
+                                                    .collect(Collectors.toList());
+            assertEquals(1, propagated.size());
+            assertEquals(PropagateMoveToColdStorageContentAction.ACTION_NAME,
+                    propagated.get(0).getProperty(COLD_STORAGE_PROPAGATED_ACTION_EVENT_PROPERTY));
+            assertEquals(propagatedIds, Set.copyOf(
+                    (List<?>) propagated.get(0).getProperty(COLD_STORAGE_PROPAGATED_DOCUMENTS_EVENT_PROPERTY)));
+            assertEquals(List.of(blob.getDigest()),
+                    propagated.get(0).getProperty(COLD_STORAGE_PROPAGATED_DIGESTS_EVENT_PROPERTY));
+        }
+        for (DocumentModel doc : docs) {
+            assertSentToColdStorage(session, doc.getRef());
+        }
+
+        try (CapturingEventListener listener = new CapturingEventListener(COLD_STORAGE_CONTENT_PROPAGATED_EVENT_NAME)) {
+            service.proceedRestoreMainContent(session, session.getDocument(docs.get(0).getRef()), false);
+            transactionalFeature.nextTransaction();
+            coreFeature.waitForAsyncCompletion();
+
+            List<EventContext> propagated = listener.streamCapturedEvents()
+                                                    .map(Event::getContext)
+                                                    .collect(Collectors.toList());
+            assertEquals(1, propagated.size());
+            assertEquals(PropagateRestoreFromColdStorageContentAction.ACTION_NAME,
+                    propagated.get(0).getProperty(COLD_STORAGE_PROPAGATED_ACTION_EVENT_PROPERTY));
+            assertEquals(propagatedIds, Set.copyOf(
+                    (List<?>) propagated.get(0).getProperty(COLD_STORAGE_PROPAGATED_DOCUMENTS_EVENT_PROPERTY)));
+        }
+        for (DocumentModel doc : docs) {
+            DocumentModel restored = session.getDocument(doc.getRef());
+            assertFalse(restored.hasFacet(COLD_STORAGE_FACET_NAME));
+            assertEquals(blob.getDigest(), ((Blob) restored.getPropertyValue(FILE_CONTENT_PROPERTY)).getDigest());
+        }
+    }
+
     // NXP-31874
     @Test
     public void shouldRestoreOnRestoreIfBlobAlreadyRestored() throws IOException {